@@ -0,0 +1,37 @@
+package app;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class Backoff {
+	private final long initialMillis;
+	private final long maxMillis;
+	private volatile long serverRetryMillis = -1;
+	private int attempts;
+
+	public Backoff(Duration initial, Duration max) {
+		this.initialMillis = initial.toMillis();
+		this.maxMillis = max.toMillis();
+	}
+
+	public void serverRetry(long millis) {
+		if (millis >= 0) {
+			serverRetryMillis = millis;
+		}
+	}
+
+	public synchronized Duration next() {
+		long base = serverRetryMillis >= 0 ? serverRetryMillis : initialMillis;
+		long ceiling = Math.min(maxMillis, base << Math.min(attempts, 16));
+		attempts++;
+		long half = Math.max(1, ceiling / 2);
+		return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(half + 1));
+	}
+
+	public synchronized int attempts() {
+		return attempts;
+	}
+
+	public synchronized void reset() {
+		attempts = 0;
+	}
+}
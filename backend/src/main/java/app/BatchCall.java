@@ -0,0 +1,150 @@
+package app;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+public class BatchCall {
+	public final String method;
+	public final JsonNode params;
+
+	public BatchCall(String method, JsonNode params) {
+		this.method = method;
+		this.params = params;
+	}
+
+	public static CompletableFuture<List<JsonNode>> sequential(
+		List<BatchCall> calls,
+		Function<BatchCall, CompletableFuture<JsonNode>> send) {
+		return sequential(calls, null, send);
+	}
+
+	public static CompletableFuture<List<JsonNode>> sequential(
+		List<BatchCall> calls,
+		List<JsonNode> received,
+		Function<BatchCall, CompletableFuture<JsonNode>> send) {
+		CompletableFuture<List<JsonNode>> chain = CompletableFuture.completedFuture(new ArrayList<>());
+		for (int i = 0; i < calls.size(); i++) {
+			BatchCall call = calls.get(i);
+			JsonNode response = received == null || i >= received.size() ? null : received.get(i);
+			chain = chain.thenCompose(
+				results -> (response != null ? CompletableFuture.completedFuture(response) : send.apply(call))
+					.thenApply(
+						message -> {
+							results.add(message);
+							return results;
+						}
+					)
+			);
+		}
+		return chain;
+	}
+
+	public static CompletableFuture<List<JsonNode>> withFallback(
+		List<BatchCall> calls,
+		CompletableFuture<List<JsonNode>> batch,
+		Runnable markUnsupported,
+		Function<BatchCall, CompletableFuture<JsonNode>> send) {
+		return batch.exceptionallyCompose(
+			error -> {
+				BatchRejectedException rejection = rejection(error);
+				if (rejection == null) {
+					return CompletableFuture.failedFuture(error);
+				}
+				markUnsupported.run();
+				// Calls the server already answered ran there; only the rest go out again.
+				return sequential(calls, rejection.responses(), send);
+			}
+		);
+	}
+
+	public static boolean isRejected(Throwable error) {
+		return rejection(error) != null;
+	}
+
+	public static BatchRejectedException rejection(Throwable error) {
+		for (Throwable current = error; current != null; current = current.getCause()) {
+			if (current instanceof BatchRejectedException rejected) {
+				return rejected;
+			}
+			if (current.getCause() == current) {
+				break;
+			}
+		}
+		return null;
+	}
+
+	public static List<JsonNode> settle(ObjectMapper mapper, List<Long> ids, List<CompletableFuture<JsonNode>> futures) {
+		List<JsonNode> results = new ArrayList<>(futures.size());
+		BatchRejectedException rejected = null;
+		for (int i = 0; i < futures.size(); i++) {
+			CompletableFuture<JsonNode> future = futures.get(i);
+			Throwable error = future.handle((value, failure) -> failure).join();
+			if (error == null) {
+				results.add(future.join());
+			}
+			else if (rejection(error) != null) {
+				rejected = rejection(error);
+				results.add(null);
+			}
+			else {
+				Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+				results.add(errorResponse(mapper, ids.get(i), String.valueOf(cause.getMessage())));
+			}
+		}
+		if (rejected != null) {
+			throw new BatchRejectedException(rejected.getMessage(), results);
+		}
+		return results;
+	}
+
+	public static List<JsonNode> ordered(ObjectMapper mapper, List<Long> ids, Map<Long, JsonNode> responses) {
+		List<JsonNode> results = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			JsonNode response = responses.get(id);
+			results.add(response != null ? response : errorResponse(mapper, id, "No response received for batch entry"));
+		}
+		return results;
+	}
+
+	public static void failUnanswered(PendingRequests pending, JsonNode reply) {
+		// An entry the server could not read comes back with a null id; the batch's other ids show which entries that was.
+		JsonNode orphaned = null;
+		Long answered = null;
+		for (JsonNode element : reply) {
+			JsonNode id = element.path("id");
+			if (id.isNull() && element.has("error")) {
+				orphaned = element.get("error");
+			}
+			else if (id.isIntegralNumber()) {
+				answered = id.asLong();
+			}
+		}
+		if (orphaned != null && answered != null) {
+			pending.failBatchOf(answered, new IllegalStateException(orphaned.toString()));
+		}
+	}
+
+	public static boolean isRejection(JsonNode message) {
+		if (message == null || !message.isObject() || !message.has("error")) {
+			return false;
+		}
+		JsonNode id = message.get("id");
+		return id == null || id.isNull();
+	}
+
+	public static ObjectNode errorResponse(ObjectMapper mapper, long id, String text) {
+		ObjectNode message = mapper.createObjectNode();
+		message.put("jsonrpc", "2.0");
+		message.put("id", id);
+		ObjectNode error = message.putObject("error");
+		error.put("code", -32603);
+		error.put("message", text);
+		return message;
+	}
+}
@@ -0,0 +1,21 @@
+package app;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.List;
+
+public class BatchRejectedException extends IllegalStateException {
+	private static final long serialVersionUID = 1L;
+	private final transient List<JsonNode> responses;
+
+	public BatchRejectedException(String message) {
+		this(message, null);
+	}
+
+	public BatchRejectedException(String message, List<JsonNode> responses) {
+		super(message);
+		this.responses = responses;
+	}
+
+	public List<JsonNode> responses() {
+		return responses;
+	}
+}
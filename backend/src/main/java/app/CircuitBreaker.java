@@ -0,0 +1,136 @@
+package app;
+import java.time.Duration;
+
+public class CircuitBreaker {
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private final int minimumCalls;
+	private final int failureRatePercent;
+	private final long openNanos;
+	private final boolean[] outcomes;
+	private int recorded;
+	private int next;
+	private int failures;
+	private State state = State.CLOSED;
+	private long openUntil;
+	private boolean probeInFlight;
+	private long openings;
+	private long rejected;
+
+	public CircuitBreaker(int window, int minimumCalls, int failureRatePercent, Duration openDuration) {
+		this.outcomes = new boolean[Math.max(1, window)];
+		this.minimumCalls = Math.max(1, Math.min(minimumCalls, outcomes.length));
+		this.failureRatePercent = failureRatePercent;
+		this.openNanos = openDuration.toNanos();
+	}
+
+	public synchronized boolean tryAcquire() {
+		if (state == State.OPEN) {
+			if (System.nanoTime() - openUntil < 0) {
+				rejected++;
+				return false;
+			}
+			state = State.HALF_OPEN;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probeInFlight) {
+				rejected++;
+				return false;
+			}
+			probeInFlight = true;
+		}
+		return true;
+	}
+
+	public synchronized void release() {
+		probeInFlight = false;
+	}
+
+	public synchronized void onSuccess() {
+		if (state == State.HALF_OPEN) {
+			close();
+			return;
+		}
+		if (state == State.CLOSED) {
+			record(false);
+		}
+	}
+
+	public synchronized void onFailure() {
+		if (state == State.HALF_OPEN) {
+			open(openNanos);
+			return;
+		}
+		if (state != State.CLOSED) {
+			return;
+		}
+		record(true);
+		if (recorded >= minimumCalls && failures * 100 >= failureRatePercent * recorded) {
+			open(openNanos);
+		}
+	}
+
+	public synchronized void backOff(Duration retryAfter) {
+		long nanos = Math.max(retryAfter.toNanos(), 0);
+		if (state == State.OPEN && openUntil - (System.nanoTime() + nanos) >= 0) {
+			return;
+		}
+		open(nanos);
+	}
+
+	public synchronized void reset() {
+		close();
+	}
+
+	public synchronized State state() {
+		if (state == State.OPEN && System.nanoTime() - openUntil >= 0) {
+			return State.HALF_OPEN;
+		}
+		return state;
+	}
+
+	public synchronized long openings() {
+		return openings;
+	}
+
+	public synchronized long rejected() {
+		return rejected;
+	}
+
+	private void record(boolean failure) {
+		if (recorded == outcomes.length) {
+			if (outcomes[next]) {
+				failures--;
+			}
+		}
+		else {
+			recorded++;
+		}
+		outcomes[next] = failure;
+		if (failure) {
+			failures++;
+		}
+		next = (next + 1) % outcomes.length;
+	}
+
+	private void open(long nanos) {
+		if (state != State.OPEN) {
+			openings++;
+		}
+		state = State.OPEN;
+		openUntil = System.nanoTime() + nanos;
+		probeInFlight = false;
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		probeInFlight = false;
+		recorded = 0;
+		next = 0;
+		failures = 0;
+	}
+}
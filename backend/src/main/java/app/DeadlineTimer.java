@@ -0,0 +1,128 @@
+package app;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import org.jboss.logging.Logger;
+
+public final class DeadlineTimer {
+	private static final Logger LOGGER = Logger.getLogger(DeadlineTimer.class);
+	private static final DeadlineTimer SHARED = new DeadlineTimer(Duration.ofMillis(100), 512);
+	private final long tickNanos;
+	private final ArrayDeque<Timeout>[] wheel;
+	private final int mask;
+	private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+	private final long startNanos = System.nanoTime();
+	private volatile boolean started;
+	private long tick;
+
+	@SuppressWarnings("unchecked")
+	public DeadlineTimer(Duration tickDuration, int wheelSize) {
+		if (Integer.bitCount(wheelSize) != 1) {
+			throw new IllegalArgumentException("Wheel size must be a power of two");
+		}
+		this.tickNanos = tickDuration.toNanos();
+		this.wheel = (ArrayDeque<Timeout>[]) new ArrayDeque<?>[wheelSize];
+		for (int i = 0; i < wheelSize; i++) {
+			wheel[i] = new ArrayDeque<>();
+		}
+		this.mask = wheelSize - 1;
+	}
+
+	public static DeadlineTimer shared() {
+		return SHARED;
+	}
+
+	public Timeout schedule(Duration delay, Runnable task) {
+		ensureStarted();
+		long deadline = System.nanoTime() - startNanos + Math.max(0, delay.toNanos());
+		Timeout timeout = new Timeout(deadline, task);
+		incoming.add(timeout);
+		return timeout;
+	}
+
+	private void ensureStarted() {
+		if (started) {
+			return;
+		}
+		synchronized (this) {
+			if (started) {
+				return;
+			}
+			Thread worker = new Thread(this::run, "mcp-deadline-timer");
+			worker.setDaemon(true);
+			worker.start();
+			started = true;
+		}
+	}
+
+	private void run() {
+		while (true) {
+			long deadline = (tick + 1) * tickNanos;
+			long sleep = deadline - (System.nanoTime() - startNanos);
+			if (sleep > 0) {
+				LockSupport.parkNanos(sleep);
+				continue;
+			}
+			transferIncoming();
+			expire(wheel[(int) (tick & mask)], deadline);
+			tick++;
+		}
+	}
+
+	private void transferIncoming() {
+		Timeout timeout;
+		while ((timeout = incoming.poll()) != null) {
+			if (timeout.cancelled) {
+				continue;
+			}
+			long target = Math.max(timeout.deadline / tickNanos, tick);
+			timeout.rounds = (target - tick) / wheel.length;
+			wheel[(int) (target & mask)].add(timeout);
+		}
+	}
+
+	private void expire(ArrayDeque<Timeout> bucket, long now) {
+		Iterator<Timeout> iterator = bucket.iterator();
+		while (iterator.hasNext()) {
+			Timeout timeout = iterator.next();
+			if (timeout.cancelled) {
+				iterator.remove();
+			}
+			else if (timeout.rounds <= 0 && timeout.deadline <= now) {
+				iterator.remove();
+				timeout.fire();
+			}
+			else {
+				timeout.rounds--;
+			}
+		}
+	}
+
+	public static final class Timeout {
+		private final long deadline;
+		private final Runnable task;
+		private long rounds;
+		private volatile boolean cancelled;
+
+		private Timeout(long deadline, Runnable task) {
+			this.deadline = deadline;
+			this.task = task;
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		private void fire() {
+			try {
+				task.run();
+			}
+			catch (RuntimeException e) {
+				LOGGER.error("Deadline task failed", e);
+			}
+		}
+	}
+}
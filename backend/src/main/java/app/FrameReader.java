@@ -0,0 +1,390 @@
+package app;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+public class FrameReader {
+	private static final int INITIAL_CAPACITY = 64 * 1024;
+	private static final int SHRINK_THRESHOLD = 4 * 1024 * 1024;
+	private static final byte NEWLINE = '\n';
+	private static final byte ESCAPE = 0x1B;
+	private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.US_ASCII);
+	private final InputStream input;
+	private byte[] buffer = new byte[INITIAL_CAPACITY];
+	private int position;
+	private int limit;
+	private int scanned;
+	private int frameOffset;
+	private int frameLength;
+	private ResponseSpool spool;
+	private BooleanSupplier spillEnabled;
+	private ResponseSpool.Sink spilled;
+
+	public FrameReader(InputStream input) {
+		this.input = input;
+	}
+
+	public void spillTo(ResponseSpool spool, BooleanSupplier enabled) {
+		this.spool = spool;
+		this.spillEnabled = enabled;
+	}
+
+	public ResponseSpool.Sink spilled() {
+		return spilled;
+	}
+
+	public boolean nextLine() throws IOException {
+		spilled = null;
+		compactIfIdle();
+		while (true) {
+			int newline = indexOf(NEWLINE, Math.max(position, scanned), limit);
+			if (newline >= 0) {
+				int end = newline;
+				if (end > position && buffer[end - 1] == '\r') {
+					end--;
+				}
+				setFrame(position, end - position);
+				position = newline + 1;
+				scanned = position;
+				return true;
+			}
+			scanned = limit;
+			if (shouldSpill(limit - position) && startsJson()) {
+				return spillLine();
+			}
+			if (!fill()) {
+				if (limit == position) {
+					return false;
+				}
+				setFrame(position, limit - position);
+				position = limit;
+				scanned = limit;
+				return true;
+			}
+		}
+	}
+
+	public int readContentLength() throws IOException {
+		int contentLength = -1;
+		while (nextLine()) {
+			if (isBlankFrame()) {
+				if (contentLength < 0) {
+					continue;
+				}
+				return contentLength;
+			}
+			if (contentLength < 0) {
+				contentLength = 0;
+			}
+			if (startsWithIgnoreCase(CONTENT_LENGTH)) {
+				contentLength = parseLength(frameOffset + CONTENT_LENGTH.length, frameOffset + frameLength);
+			}
+		}
+		return -1;
+	}
+
+	public boolean readBody(int length) throws IOException {
+		spilled = null;
+		compactIfIdle();
+		if (shouldSpill(length)) {
+			return spillBody(length);
+		}
+		ensureCapacity(length);
+		while (limit - position < length) {
+			if (!fill()) {
+				setFrame(position, limit - position);
+				position = limit;
+				scanned = limit;
+				return false;
+			}
+		}
+		setFrame(position, length);
+		position += length;
+		scanned = position;
+		return true;
+	}
+
+	public byte[] array() {
+		return buffer;
+	}
+
+	public int frameOffset() {
+		return frameOffset;
+	}
+
+	public int frameLength() {
+		return frameLength;
+	}
+
+	public boolean isBlankFrame() {
+		for (int i = frameOffset; i < frameOffset + frameLength; i++) {
+			if (!isWhitespace(buffer[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void stripAnsi() {
+		int end = frameOffset + frameLength;
+		int read = indexOf(ESCAPE, frameOffset, end);
+		if (read < 0) {
+			return;
+		}
+		int write = read;
+		while (read < end) {
+			byte b = buffer[read];
+			if (b == ESCAPE) {
+				int sequenceEnd = ansiSequenceEnd(read, end);
+				if (sequenceEnd > 0) {
+					read = sequenceEnd;
+					continue;
+				}
+			}
+			buffer[write++] = b;
+			read++;
+		}
+		frameLength = write - frameOffset;
+	}
+
+	public void trim() {
+		int start = frameOffset;
+		int end = frameOffset + frameLength;
+		while (start < end && isControlOrSpace(buffer[start])) {
+			start++;
+		}
+		while (end > start && isControlOrSpace(buffer[end - 1])) {
+			end--;
+		}
+		setFrame(start, end - start);
+	}
+
+	public boolean looksLikeJson() {
+		if (frameLength == 0) {
+			return false;
+		}
+		byte first = buffer[frameOffset];
+		return first == '{' || first == '[';
+	}
+
+	public String frameString(Charset charset) {
+		return new String(buffer, frameOffset, frameLength, charset);
+	}
+
+	private void setFrame(int offset, int length) {
+		frameOffset = offset;
+		frameLength = length;
+	}
+
+	private boolean shouldSpill(int length) {
+		return spool != null && length > spool.threshold() && spillEnabled.getAsBoolean();
+	}
+
+	private boolean startsJson() {
+		for (int i = position; i < limit; i++) {
+			if (!isControlOrSpace(buffer[i])) {
+				return buffer[i] == '{';
+			}
+		}
+		return false;
+	}
+
+	private boolean spillLine() throws IOException {
+		ResponseSpool.Sink sink = spool.newSink();
+		try {
+			sink.write(buffer, position, limit - position);
+			position = 0;
+			limit = 0;
+			while (true) {
+				int read = input.read(buffer, 0, buffer.length);
+				if (read < 0) {
+					break;
+				}
+				int newline = indexOf(NEWLINE, 0, read);
+				if (newline >= 0) {
+					sink.write(buffer, 0, newline);
+					position = newline + 1;
+					limit = read;
+					break;
+				}
+				sink.write(buffer, 0, read);
+			}
+		}
+		catch (IOException e) {
+			sink.discard();
+			throw e;
+		}
+		scanned = position;
+		setFrame(position, 0);
+		spilled = sink;
+		return true;
+	}
+
+	private boolean spillBody(int length) throws IOException {
+		ResponseSpool.Sink sink = spool.newSink();
+		int remaining = length;
+		try {
+			int buffered = Math.min(limit - position, remaining);
+			sink.write(buffer, position, buffered);
+			position += buffered;
+			remaining -= buffered;
+			while (remaining > 0) {
+				compactIfIdle();
+				int read = input.read(buffer, 0, Math.min(buffer.length, remaining));
+				if (read < 0) {
+					sink.discard();
+					setFrame(position, 0);
+					return false;
+				}
+				sink.write(buffer, 0, read);
+				remaining -= read;
+			}
+		}
+		catch (IOException e) {
+			sink.discard();
+			throw e;
+		}
+		scanned = position;
+		setFrame(position, 0);
+		spilled = sink;
+		return true;
+	}
+
+	private boolean fill() throws IOException {
+		if (limit == buffer.length) {
+			if (position > 0) {
+				compact();
+			}
+			else {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+		}
+		int read = input.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+
+	private void ensureCapacity(int length) {
+		if (position + length <= buffer.length) {
+			return;
+		}
+		if (length <= buffer.length) {
+			compact();
+			return;
+		}
+		int capacity = buffer.length;
+		while (capacity < length) {
+			capacity *= 2;
+		}
+		byte[] grown = new byte[capacity];
+		System.arraycopy(buffer, position, grown, 0, limit - position);
+		limit -= position;
+		scanned -= position;
+		position = 0;
+		buffer = grown;
+	}
+
+	private void compact() {
+		int remaining = limit - position;
+		System.arraycopy(buffer, position, buffer, 0, remaining);
+		scanned -= position;
+		limit = remaining;
+		position = 0;
+	}
+
+	private void compactIfIdle() {
+		if (position == limit) {
+			position = 0;
+			limit = 0;
+			scanned = 0;
+			if (buffer.length > SHRINK_THRESHOLD) {
+				buffer = new byte[INITIAL_CAPACITY];
+			}
+		}
+	}
+
+	private int indexOf(byte value, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean startsWithIgnoreCase(byte[] prefix) {
+		if (frameLength < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			byte b = buffer[frameOffset + i];
+			if (b >= 'A' && b <= 'Z') {
+				b = (byte) (b + ('a' - 'A'));
+			}
+			if (b != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int parseLength(int from, int to) {
+		int start = from;
+		int end = to;
+		while (start < end && isWhitespace(buffer[start])) {
+			start++;
+		}
+		while (end > start && isWhitespace(buffer[end - 1])) {
+			end--;
+		}
+		if (start == end) {
+			throw new NumberFormatException("Empty Content-Length header");
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			byte b = buffer[i];
+			if (b < '0' || b > '9') {
+				throw new NumberFormatException("Invalid Content-Length header");
+			}
+			value = value * 10 + (b - '0');
+			if (value > Integer.MAX_VALUE) {
+				throw new NumberFormatException("Content-Length too large");
+			}
+		}
+		return (int) value;
+	}
+
+	private int ansiSequenceEnd(int escape, int end) {
+		int i = escape + 1;
+		if (i >= end || buffer[i] != '[') {
+			return -1;
+		}
+		i++;
+		while (i < end) {
+			byte b = buffer[i];
+			if ((b >= '0' && b <= '9') || b == ';' || b == '?') {
+				i++;
+				continue;
+			}
+			if ((b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z')) {
+				return i + 1;
+			}
+			return -1;
+		}
+		return -1;
+	}
+
+	private static boolean isControlOrSpace(byte b) {
+		return b >= 0 && b <= ' ';
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+}
@@ -0,0 +1,165 @@
+package app;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+public class FrameSubscriber implements HttpResponse.BodySubscriber<Boolean> {
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	public interface FrameHandler {
+		// The bytes are only valid during the call.
+		boolean onFrame(byte[] data, int offset, int length) throws Exception;
+	}
+
+	private enum Mode {
+		LINES,
+		EVENTS,
+		WHOLE
+	}
+
+	private final Mode mode;
+	private final FrameHandler frameHandler;
+	private final SseDecoder decoder;
+	private final SseDecoder.Handler eventHandler;
+	private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+	private byte[] chunk = new byte[CHUNK_SIZE];
+	private byte[] pending = new byte[CHUNK_SIZE];
+	private int pendingLength;
+	private Flow.Subscription subscription;
+
+	private FrameSubscriber(Mode mode, FrameHandler frameHandler, SseDecoder decoder, SseDecoder.Handler eventHandler) {
+		this.mode = mode;
+		this.frameHandler = frameHandler;
+		this.decoder = decoder;
+		this.eventHandler = eventHandler;
+	}
+
+	public static FrameSubscriber lines(FrameHandler handler) {
+		return new FrameSubscriber(Mode.LINES, handler, null, null);
+	}
+
+	public static FrameSubscriber events(SseDecoder decoder, SseDecoder.Handler handler) {
+		return new FrameSubscriber(Mode.EVENTS, null, decoder, handler);
+	}
+
+	public static FrameSubscriber whole(FrameHandler handler) {
+		return new FrameSubscriber(Mode.WHOLE, handler, null, null);
+	}
+
+	@Override
+	public CompletionStage<Boolean> getBody() {
+		return result;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		this.subscription = subscription;
+		subscription.request(1);
+	}
+
+	@Override
+	public void onNext(List<ByteBuffer> buffers) {
+		if (result.isDone()) {
+			return;
+		}
+		try {
+			for (ByteBuffer buffer : buffers) {
+				while (buffer.hasRemaining()) {
+					int length = Math.min(buffer.remaining(), chunk.length);
+					buffer.get(chunk, 0, length);
+					if (feed(length)) {
+						result.complete(true);
+						subscription.cancel();
+						return;
+					}
+				}
+			}
+			subscription.request(1);
+		}
+		catch (Exception e) {
+			result.completeExceptionally(e);
+			subscription.cancel();
+		}
+	}
+
+	@Override
+	public void onError(Throwable error) {
+		result.completeExceptionally(error);
+	}
+
+	@Override
+	public void onComplete() {
+		if (result.isDone()) {
+			return;
+		}
+		try {
+			boolean done = switch (mode) {
+				case LINES -> pendingLength > 0 && line(pending, 0, pendingLength);
+				case WHOLE -> frameHandler.onFrame(pending, 0, pendingLength);
+				case EVENTS -> false;
+			};
+			result.complete(done);
+		}
+		catch (Exception e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+	private boolean feed(int length) throws Exception {
+		if (mode == Mode.EVENTS) {
+			return decoder.feed(chunk, 0, length, eventHandler);
+		}
+		if (mode == Mode.WHOLE) {
+			append(chunk, 0, length);
+			return false;
+		}
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			if (chunk[i] != '\n') {
+				continue;
+			}
+			boolean done;
+			if (pendingLength > 0) {
+				append(chunk, start, i - start);
+				done = line(pending, 0, pendingLength);
+				pendingLength = 0;
+			}
+			else {
+				done = line(chunk, start, i - start);
+			}
+			start = i + 1;
+			if (done) {
+				return true;
+			}
+		}
+		append(chunk, start, length - start);
+		return false;
+	}
+
+	private boolean line(byte[] data, int offset, int length) throws Exception {
+		int start = offset;
+		int end = offset + length;
+		while (start < end && (data[start] & 0xFF) <= ' ') {
+			start++;
+		}
+		while (end > start && (data[end - 1] & 0xFF) <= ' ') {
+			end--;
+		}
+		return end > start && frameHandler.onFrame(data, start, end - start);
+	}
+
+	private void append(byte[] source, int offset, int length) {
+		if (length <= 0) {
+			return;
+		}
+		if (pendingLength + length > pending.length) {
+			pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length));
+		}
+		System.arraycopy(source, offset, pending, pendingLength, length);
+		pendingLength += length;
+	}
+}
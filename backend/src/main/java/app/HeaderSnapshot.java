@@ -0,0 +1,69 @@
+package app;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public class HeaderSnapshot implements Supplier<Map<String, String>> {
+	private final Supplier<Map<String, String>> source;
+	private final Supplier<Instant> validUntil;
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong rebuilds = new AtomicLong();
+	private volatile Snapshot current;
+
+	public HeaderSnapshot(Supplier<Map<String, String>> source, Supplier<Instant> validUntil) {
+		this.source = source;
+		this.validUntil = validUntil;
+	}
+
+	@Override
+	public Map<String, String> get() {
+		Snapshot snapshot = current;
+		if (snapshot != null && snapshot.isValid()) {
+			return snapshot.headers;
+		}
+		return rebuild();
+	}
+
+	public void invalidate() {
+		generation.incrementAndGet();
+		current = null;
+	}
+
+	public long rebuilds() {
+		return rebuilds.get();
+	}
+
+	private synchronized Map<String, String> rebuild() {
+		Snapshot snapshot = current;
+		if (snapshot != null && snapshot.isValid()) {
+			return snapshot.headers;
+		}
+		long expected = generation.get();
+		Map<String, String> headers = source.get();
+		Instant until = validUntil.get();
+		Snapshot rebuilt = new Snapshot(
+			headers == null || headers.isEmpty() ? null : Map.copyOf(headers),
+			until == null ? Long.MAX_VALUE : until.toEpochMilli());
+		rebuilds.incrementAndGet();
+		// An invalidation while building means the inputs moved underneath us; serve this once, don't cache it.
+		if (generation.get() == expected) {
+			current = rebuilt;
+		}
+		return rebuilt.headers;
+	}
+
+	private static final class Snapshot {
+		private final Map<String, String> headers;
+		private final long validUntilMillis;
+
+		private Snapshot(Map<String, String> headers, long validUntilMillis) {
+			this.headers = headers;
+			this.validUntilMillis = validUntilMillis;
+		}
+
+		private boolean isValid() {
+			return validUntilMillis == Long.MAX_VALUE || System.currentTimeMillis() < validUntilMillis;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package app;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@ApplicationScoped
+public class HttpClients {
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+	private final Map<String, Origin> origins = new ConcurrentHashMap<>();
+	private final AtomicInteger threadIds = new AtomicInteger(1);
+	private final ExecutorService executor = Executors.newCachedThreadPool(
+		task -> {
+			Thread thread = new Thread(task, "mcp-http-" + threadIds.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	);
+
+	public HttpClient clientFor(URI uri) {
+		return originFor(uri).client;
+	}
+
+	public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+		Origin origin = originFor(request.uri());
+		origin.started();
+		return origin.client.sendAsync(request, handler)
+			.whenComplete(origin::finished);
+	}
+
+	public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+		Origin origin = originFor(request.uri());
+		origin.started();
+		HttpResponse<T> response = null;
+		Throwable error = null;
+		try {
+			response = origin.client.send(request, handler);
+			return response;
+		}
+		catch (IOException | InterruptedException | RuntimeException e) {
+			error = e;
+			throw e;
+		}
+		finally {
+			origin.finished(response, error);
+		}
+	}
+
+	public Map<String, Long> metrics(URI uri) {
+		Origin origin = originFor(uri);
+		return Map.of(
+			"httpPoolOrigins", (long) origins.size(),
+			"httpInFlight", origin.inFlight.get(),
+			"httpRequests", origin.requests.get(),
+			"httpFailures", origin.failures.get(),
+			"httpHttp2Responses", origin.http2Responses.get(),
+			"httpHttp1Responses", origin.http1Responses.get());
+	}
+
+	@PreDestroy
+	void close() {
+		origins.values().forEach(origin -> origin.client.shutdownNow());
+		executor.shutdownNow();
+	}
+
+	private Origin originFor(URI uri) {
+		return origins.computeIfAbsent(originKey(uri), this::createOrigin);
+	}
+
+	private Origin createOrigin(String key) {
+		// h2c upgrade on cleartext origins is poorly supported by MCP servers; negotiate HTTP/2 via ALPN only.
+		HttpClient.Version version = key.startsWith("https://") ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+		HttpClient client = HttpClient.newBuilder()
+			.connectTimeout(CONNECT_TIMEOUT)
+			.version(version)
+			.executor(executor)
+			.build();
+		return new Origin(client);
+	}
+
+	private static String originKey(URI uri) {
+		String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase(Locale.ROOT);
+		String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+		int port = uri.getPort();
+		if (port < 0) {
+			port = "https".equals(scheme) ? 443 : 80;
+		}
+		return scheme + "://" + host + ":" + port;
+	}
+
+	private static class Origin {
+		private final HttpClient client;
+		private final AtomicLong inFlight = new AtomicLong();
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong http2Responses = new AtomicLong();
+		private final AtomicLong http1Responses = new AtomicLong();
+
+		private Origin(HttpClient client) {
+			this.client = client;
+		}
+
+		private void started() {
+			requests.incrementAndGet();
+			inFlight.incrementAndGet();
+		}
+
+		private void finished(HttpResponse<?> response, Throwable error) {
+			inFlight.decrementAndGet();
+			if (error != null || response == null) {
+				failures.incrementAndGet();
+			}
+			else if (response.version() == HttpClient.Version.HTTP_2) {
+				http2Responses.incrementAndGet();
+			}
+			else {
+				http1Responses.incrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package app;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+public class HttpStatusException extends IllegalStateException {
+	private static final long serialVersionUID = 1L;
+	public final int status;
+	public final Duration retryAfter;
+
+	public HttpStatusException(String message, int status, Duration retryAfter) {
+		super(message);
+		this.status = status;
+		this.retryAfter = retryAfter;
+	}
+
+	public static HttpStatusException from(int status, HttpHeaders headers, String body) {
+		String message = body == null || body.isBlank()
+			? "HTTP " + status + " from server"
+			: "HTTP " + status + " from server: " + body;
+		Duration retryAfter = headers == null ? null : headers.firstValue("Retry-After").map(HttpStatusException::parseRetryAfter).orElse(null);
+		return new HttpStatusException(message, status, retryAfter);
+	}
+
+	public boolean isServerFailure() {
+		return status >= 500 || status == 429;
+	}
+
+	static Duration parseRetryAfter(String value) {
+		if (value == null || value.isBlank()) {
+			return null;
+		}
+		String trimmed = value.trim();
+		try {
+			long seconds = Long.parseLong(trimmed);
+			return seconds < 0 ? null : Duration.ofSeconds(seconds);
+		}
+		catch (NumberFormatException ignored) {
+		}
+		try {
+			Duration delay = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME));
+			return delay.isNegative() ? Duration.ZERO : delay;
+		}
+		catch (DateTimeParseException ignored) {
+			return null;
+		}
+	}
+}
@@ -1,19 +1,27 @@
 package app;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class JsonRpcConnection {
+	private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
 	public enum Framing {
 		NDJSON,
 		CONTENT_LENGTH
@@ -23,32 +31,80 @@ public class JsonRpcConnection {
 	private final InputStream input;
 	private final OutputStream output;
 	private final Consumer<String> logSink;
+	private final Consumer<WireEvent> wireSink;
 	private final Framing framing;
-	private final AtomicInteger nextId = new AtomicInteger(1);
-	private final Map<Integer, CompletableFuture<JsonNode>> pending = new ConcurrentHashMap<>();
-	private final Map<Integer, CompletableFuture<JsonNode>> pendingRaw = new ConcurrentHashMap<>();
+	private final SessionThreads threads;
+	private final RequestTimeouts timeouts;
+	private final ResponseSpool spool;
+	private final AtomicLong nextId = new AtomicLong(1);
+	private final PendingRequests pending;
+	private final BlockingQueue<JsonNode> outbound = new LinkedBlockingQueue<>();
+	private final AtomicLong flushes = new AtomicLong();
+	private final AtomicLong flushedFrames = new AtomicLong();
+	private final AtomicLong flushedBytes = new AtomicLong();
+	private final AtomicLong maxFlushBytes = new AtomicLong();
+	private FrameBuffer writeBuffer = new FrameBuffer();
+	private FrameBuffer bodyBuffer = new FrameBuffer();
+	private volatile Thread writer;
+	private volatile boolean closed;
+	private volatile boolean batchesAnswered;
+	private volatile Consumer<JsonNode> notificationHandler;
 
 	public JsonRpcConnection(
 		ObjectMapper mapper,
 		InputStream input,
 		OutputStream output,
 		Consumer<String> logSink,
-		Framing framing) {
+		Consumer<WireEvent> wireSink,
+		Framing framing,
+		SessionThreads threads,
+		RequestTimeouts timeouts,
+		ResponseSpool spool) {
 		this.mapper = mapper;
 		this.input = input;
 		this.output = output;
 		this.logSink = logSink;
+		this.wireSink = wireSink;
 		this.framing = framing;
+		this.threads = threads;
+		this.timeouts = timeouts;
+		this.spool = spool;
+		this.pending = new PendingRequests(
+			entry -> logSink.accept("!! request " + entry.id + " (" + entry.method + ") timed out after " + entry.timeout.toMillis() + " ms"),
+			timeouts);
 	}
 
 	public void start() {
-		Thread reader = new Thread(this::readLoop, "mcp-jsonrpc-reader");
-		reader.setDaemon(true);
-		reader.start();
+		writer = threads.start("mcp-jsonrpc-writer", this::writeLoop);
+		threads.start("mcp-jsonrpc-reader", this::readLoop);
 	}
 
 	public CompletableFuture<JsonNode> request(String method, JsonNode params) {
-		int id = nextId.getAndIncrement();
+		return request(method, params, timeouts.timeoutFor(method));
+	}
+
+	public CompletableFuture<JsonNode> request(String method, JsonNode params, Duration timeout) {
+		return call(method, params, PendingRequests.Mode.RESULT, timeout);
+	}
+
+	public CompletableFuture<JsonNode> requestRaw(String method, JsonNode params) {
+		return requestRaw(method, params, timeouts.timeoutFor(method));
+	}
+
+	public CompletableFuture<JsonNode> requestRaw(String method, JsonNode params, Duration timeout) {
+		return call(method, params, PendingRequests.Mode.RAW, timeout);
+	}
+
+	public CompletableFuture<SpooledResult> requestSpooled(String method, JsonNode params) {
+		return requestSpooled(method, params, timeouts.timeoutFor(method));
+	}
+
+	public CompletableFuture<SpooledResult> requestSpooled(String method, JsonNode params, Duration timeout) {
+		return call(method, params, PendingRequests.Mode.SPOOLED, timeout);
+	}
+
+	private <T> CompletableFuture<T> call(String method, JsonNode params, PendingRequests.Mode mode, Duration timeout) {
+		long id = nextId.getAndIncrement();
 		ObjectNode payload = mapper.createObjectNode();
 		payload.put("jsonrpc", "2.0");
 		payload.put("id", id);
@@ -56,25 +112,63 @@ public class JsonRpcConnection {
 		if (params != null) {
 			payload.set("params", params);
 		}
-		CompletableFuture<JsonNode> future = new CompletableFuture<>();
-		pending.put(id, future);
+		if (closed) {
+			return CompletableFuture.failedFuture(new EOFException("Server closed the connection"));
+		}
+		CompletableFuture<T> future = pending.register(id, method, mode, timeout);
 		send(payload);
 		return future;
 	}
 
-	public CompletableFuture<JsonNode> requestRaw(String method, JsonNode params) {
-		int id = nextId.getAndIncrement();
-		ObjectNode payload = mapper.createObjectNode();
-		payload.put("jsonrpc", "2.0");
-		payload.put("id", id);
-		payload.put("method", method);
-		if (params != null) {
-			payload.set("params", params);
+	public CompletableFuture<List<JsonNode>> requestBatch(List<BatchCall> calls) {
+		return requestBatch(calls, null);
+	}
+
+	public CompletableFuture<List<JsonNode>> requestBatch(List<BatchCall> calls, Duration timeout) {
+		ArrayNode payload = mapper.createArrayNode();
+		List<Long> ids = new ArrayList<>(calls.size());
+		List<CompletableFuture<JsonNode>> futures = new ArrayList<>(calls.size());
+		for (BatchCall call : calls) {
+			long id = nextId.getAndIncrement();
+			ObjectNode message = payload.addObject();
+			message.put("jsonrpc", "2.0");
+			message.put("id", id);
+			message.put("method", call.method);
+			if (call.params != null) {
+				message.set("params", call.params);
+			}
+			CompletableFuture<JsonNode> future = timeout == null
+				? pending.register(id, call.method, PendingRequests.Mode.RAW)
+				: pending.register(id, call.method, PendingRequests.Mode.RAW, timeout);
+			ids.add(id);
+			futures.add(future);
 		}
-		CompletableFuture<JsonNode> future = new CompletableFuture<>();
-		pendingRaw.put(id, future);
+		pending.addBatch(ids);
 		send(payload);
-		return future;
+		return CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new))
+			.handle(
+				(ignored, error) -> {
+					pending.removeBatch(ids);
+					return BatchCall.settle(mapper, ids, futures);
+				}
+			);
+	}
+
+	public void onNotification(Consumer<JsonNode> handler) {
+		this.notificationHandler = handler;
+	}
+
+	public long timedOutRequests() {
+		return pending.timedOutRequests();
+	}
+
+	public Map<String, Long> writerMetrics() {
+		return Map.of(
+			"writerQueueDepth", (long) outbound.size(),
+			"writerFlushes", flushes.get(),
+			"writerFlushedFrames", flushedFrames.get(),
+			"writerFlushedBytes", flushedBytes.get(),
+			"writerMaxFlushBytes", maxFlushBytes.get());
 	}
 
 	public void notify(String method, JsonNode params) {
@@ -87,22 +181,59 @@ public class JsonRpcConnection {
 		send(payload);
 	}
 
-	private void send(ObjectNode payload) {
-		try {
-			String json = mapper.writeValueAsString(payload);
-			byte[] body = json.getBytes(StandardCharsets.UTF_8);
-			logSink.accept(">> " + json);
-			synchronized (output) {
-				if (framing == Framing.NDJSON) {
-					output.write(body);
-					output.write('\n');
-					output.flush();
+	private void send(JsonNode payload) {
+		outbound.add(payload);
+	}
+
+	private void writeLoop() {
+		List<JsonNode> drained = new ArrayList<>();
+		while (true) {
+			try {
+				drained.add(outbound.take());
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			outbound.drainTo(drained);
+			try {
+				writeBuffer.reset();
+				for (JsonNode payload : drained) {
+					appendFrame(payload);
 				}
-				else {
-					String header = "Content-Length: " + body.length + "\r\n\r\n";
-					output.write(header.getBytes(StandardCharsets.US_ASCII));
-					output.write(body);
+				if (writeBuffer.size() > 0) {
+					output.write(writeBuffer.array(), 0, writeBuffer.size());
 					output.flush();
+					recordFlush(drained.size(), writeBuffer.size());
+				}
+			}
+			catch (IOException e) {
+				logSink.accept("!! failed to send request: " + e.getMessage());
+			}
+			finally {
+				drained.clear();
+				if (writeBuffer.array().length > MAX_RETAINED_BUFFER) {
+					writeBuffer = new FrameBuffer();
+				}
+			}
+		}
+	}
+
+	private void appendFrame(JsonNode payload) {
+		try {
+			if (framing == Framing.NDJSON) {
+				int start = writeBuffer.size();
+				mapper.writeValue(writeBuffer, payload);
+				wireSink.accept(WireEvent.message(WireEvent.Direction.OUT, payload, writeBuffer.size() - start));
+				writeBuffer.write('\n');
+			}
+			else {
+				bodyBuffer.reset();
+				mapper.writeValue(bodyBuffer, payload);
+				wireSink.accept(WireEvent.message(WireEvent.Direction.OUT, payload, bodyBuffer.size()));
+				writeBuffer.writeBytes(("Content-Length: " + bodyBuffer.size() + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+				writeBuffer.write(bodyBuffer.array(), 0, bodyBuffer.size());
+				if (bodyBuffer.array().length > MAX_RETAINED_BUFFER) {
+					bodyBuffer = new FrameBuffer();
 				}
 			}
 		}
@@ -111,6 +242,13 @@ public class JsonRpcConnection {
 		}
 	}
 
+	private void recordFlush(int frames, int bytes) {
+		flushes.incrementAndGet();
+		flushedFrames.addAndGet(frames);
+		flushedBytes.addAndGet(bytes);
+		maxFlushBytes.accumulateAndGet(bytes, Math::max);
+	}
+
 	private void readLoop() {
 		try {
 			if (framing == Framing.NDJSON) {
@@ -119,139 +257,212 @@ public class JsonRpcConnection {
 			else {
 				readContentLength();
 			}
+			// Nothing more can arrive; fail what is pending now instead of letting it run into its timeout.
+			closed = true;
+			pending.failAll(new EOFException("Server closed the connection"));
+			stopWriter();
 		}
 		catch (Exception e) {
 			logSink.accept("!! reader error: " + e.getMessage());
-			pending.values()
-				.forEach(f -> f.completeExceptionally(e));
-			pendingRaw.values()
-				.forEach(f -> f.completeExceptionally(e));
-			pending.clear();
-			pendingRaw.clear();
+			closed = true;
+			pending.failAll(e);
+			stopWriter();
+		}
+	}
+
+	private void stopWriter() {
+		if (writer != null) {
+			writer.interrupt();
 		}
 	}
 
 	private void readNdjson() throws IOException {
-		while (true) {
-			String line = readLine(input);
-			if (line == null) {
-				break;
-			}
-			String cleaned = stripAnsi(line).trim();
-			if (cleaned.isBlank()) {
-				continue;
-			}
-			if (!looksLikeJson(cleaned)) {
-				logSink.accept(".. " + cleaned);
-				continue;
-			}
-			logSink.accept("<< " + cleaned);
-			try {
-				JsonNode message = mapper.readTree(cleaned);
-				handleMessage(message);
-			}
-			catch (Exception e) {
-				logSink.accept("!! failed to parse json: " + e.getMessage());
-			}
+		FrameReader reader = new FrameReader(input);
+		reader.spillTo(spool, pending::hasSpooled);
+		while (reader.nextLine()) {
+			handleFrame(reader);
 		}
 	}
 
 	private void readContentLength() throws IOException {
+		FrameReader reader = new FrameReader(input);
+		reader.spillTo(spool, pending::hasSpooled);
 		while (true) {
-			String line = readLine(input);
-			if (line == null) {
+			int contentLength = reader.readContentLength();
+			if (contentLength < 0) {
 				break;
 			}
-			if (line.isBlank()) {
-				continue;
-			}
-			int contentLength = 0;
-			while (line != null && !line.isBlank()) {
-				if (line.toLowerCase().startsWith("content-length:")) {
-					String[] parts = line.split(":", 2);
-					if (parts.length == 2) {
-						contentLength = Integer.parseInt(parts[1].trim());
-					}
-				}
-				line = readLine(input);
-			}
-			if (contentLength <= 0) {
+			if (contentLength == 0) {
 				continue;
 			}
-			byte[] body = input.readNBytes(contentLength);
-			String json = new String(body, StandardCharsets.UTF_8);
-			String cleaned = stripAnsi(json).trim();
-			if (!looksLikeJson(cleaned)) {
-				logSink.accept(".. " + cleaned);
-				continue;
-			}
-			logSink.accept("<< " + cleaned);
-			try {
-				JsonNode message = mapper.readTree(cleaned);
-				handleMessage(message);
-			}
-			catch (Exception e) {
-				logSink.accept("!! failed to parse json: " + e.getMessage());
-			}
+			reader.readBody(contentLength);
+			handleFrame(reader);
 		}
 	}
 
-	private void handleMessage(JsonNode message) {
-		if (message.has("id") && message.has("result")) {
-			int id = message.get("id").asInt();
-			CompletableFuture<JsonNode> raw = pendingRaw.remove(id);
-			if (raw != null) {
-				raw.complete(message);
-				return;
-			}
-			CompletableFuture<JsonNode> future = pending.remove(id);
-			if (future != null) {
-				future.complete(message.get("result"));
-			}
+	private void handleFrame(FrameReader reader) {
+		if (reader.spilled() != null) {
+			handleSpilled(reader.spilled());
+			return;
 		}
-		else if (message.has("id") && message.has("error")) {
-			int id = message.get("id").asInt();
-			CompletableFuture<JsonNode> raw = pendingRaw.remove(id);
-			if (raw != null) {
-				raw.complete(message);
-				return;
-			}
-			CompletableFuture<JsonNode> future = pending.remove(id);
-			if (future != null) {
-				future.completeExceptionally(new IllegalStateException(message.get("error").toString()));
-			}
+		reader.stripAnsi();
+		reader.trim();
+		if (reader.frameLength() == 0) {
+			return;
+		}
+		if (!reader.looksLikeJson()) {
+			logSink.accept(".. " + reader.frameString(StandardCharsets.UTF_8));
+			return;
+		}
+		if (pending.hasSpooled() && trySpool(reader)) {
+			return;
+		}
+		try {
+			JsonNode message = mapper.readTree(reader.array(), reader.frameOffset(), reader.frameLength());
+			wireSink.accept(WireEvent.message(WireEvent.Direction.IN, message, reader.frameLength()));
+			handleParsed(message);
+		}
+		catch (Exception e) {
+			logSink.accept("<< " + reader.frameString(StandardCharsets.UTF_8));
+			logSink.accept("!! failed to parse json: " + e.getMessage());
 		}
 	}
 
-	private static String readLine(InputStream input) throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		while (true) {
-			int ch = input.read();
-			if (ch == -1) {
-				return buffer.size() == 0 ? null : buffer.toString(StandardCharsets.US_ASCII);
-			}
-			if (ch == '\n') {
-				break;
-			}
-			if (ch != '\r') {
-				buffer.write(ch);
-			}
+	private void handleSpilled(ResponseSpool.Sink sink) {
+		SpooledResult result;
+		try {
+			result = sink.finish();
+		}
+		catch (IOException e) {
+			logSink.accept("!! failed to spool response: " + e.getMessage());
+			return;
+		}
+		MessagePeek peek = result.peek();
+		PendingRequests.Entry entry = peek == null || !peek.hasId ? null : pending.get(peek.id);
+		if (entry != null && entry.mode == PendingRequests.Mode.SPOOLED && pending.remove(entry)) {
+			logSink.accept("<< {\"id\":" + peek.id + (peek.hasError ? ",\"error\"" : ",\"result\"") + ":(spooled " + result.messageLength + " bytes)}");
+			entry.complete(result);
+			return;
+		}
+		if (entry == null && peek != null && peek.hasId) {
+			logSink.accept("!! dropped late response " + peek.id + " (" + result.messageLength + " bytes)");
+			result.delete();
+			return;
+		}
+		try {
+			JsonNode message = result.readMessage(mapper);
+			wireSink.accept(WireEvent.message(WireEvent.Direction.IN, message, result.messageLength));
+			handleParsed(message);
+		}
+		catch (Exception e) {
+			logSink.accept("!! failed to parse json: " + e.getMessage());
+		}
+		finally {
+			result.delete();
 		}
-		return buffer.toString(StandardCharsets.US_ASCII);
 	}
 
-	private static boolean looksLikeJson(String value) {
-		if (value == null) {
+	private void handleParsed(JsonNode message) {
+		if (message.isArray()) {
+			batchesAnswered = true;
+			message.forEach(this::handleMessage);
+			BatchCall.failUnanswered(pending, message);
+		}
+		else if (BatchCall.isRejection(message)) {
+			rejectBatch(message);
+		}
+		else {
+			handleMessage(message);
+		}
+	}
+
+	private void dispatchNotification(JsonNode message) {
+		Consumer<JsonNode> handler = notificationHandler;
+		if (handler == null) {
+			return;
+		}
+		try {
+			handler.accept(message);
+		}
+		catch (RuntimeException e) {
+			logSink.accept("!! notification handler failed: " + e.getMessage());
+		}
+	}
+
+	private void rejectBatch(JsonNode message) {
+		BatchRejectedException error = new BatchRejectedException("Batch rejected: " + message.get("error"));
+		if (batchesAnswered || !pending.rejectBatch(error)) {
+			logSink.accept("!! error without request id: " + message.get("error"));
+		}
+	}
+
+	private boolean trySpool(FrameReader reader) {
+		MessagePeek peek;
+		try (JsonParser parser = mapper.getFactory().createParser(reader.array(), reader.frameOffset(), reader.frameLength())) {
+			peek = MessagePeek.scan(parser);
+		}
+		catch (Exception e) {
+			return false;
+		}
+		if (peek == null || !peek.hasId) {
 			return false;
 		}
-		String trimmed = value.trim();
-		return trimmed.startsWith("{") || trimmed.startsWith("[");
+		PendingRequests.Entry entry = pending.get(peek.id);
+		if (entry == null || entry.mode != PendingRequests.Mode.SPOOLED || !pending.remove(entry)) {
+			return false;
+		}
+		logSink.accept("<< {\"id\":" + peek.id + (peek.hasError ? ",\"error\"" : ",\"result\"") + ":(spooled " + reader.frameLength() + " bytes)}");
+		try {
+			entry.complete(spool.spool(reader.array(), reader.frameOffset(), reader.frameLength(), peek));
+		}
+		catch (IOException e) {
+			entry.fail(e);
+		}
+		return true;
+	}
+
+	private void handleMessage(JsonNode message) {
+		if (message.has("method") && !message.has("id")) {
+			dispatchNotification(message);
+			return;
+		}
+		if (!message.has("id") || !(message.has("result") || message.has("error"))) {
+			return;
+		}
+		if (message.get("id").isNull()) {
+			logSink.accept("!! error without request id: " + message.get("error"));
+			return;
+		}
+		PendingRequests.Entry entry = pending.remove(message.get("id").asLong());
+		if (entry == null) {
+			return;
+		}
+		if (entry.mode == PendingRequests.Mode.RAW) {
+			entry.complete(message);
+		}
+		else if (entry.mode == PendingRequests.Mode.SPOOLED) {
+			try {
+				entry.complete(spool.spool(message));
+			}
+			catch (IOException e) {
+				entry.fail(e);
+			}
+		}
+		else if (message.has("error")) {
+			entry.fail(new IllegalStateException(message.get("error").toString()));
+		}
+		else {
+			entry.complete(message.get("result"));
+		}
 	}
 
-	private static String stripAnsi(String value) {
-		if (value == null || value.isEmpty()) {
-			return value;
+	private static class FrameBuffer extends ByteArrayOutputStream {
+		private FrameBuffer() {
+			super(8192);
+		}
+
+		private byte[] array() {
+			return buf;
 		}
-		return value.replaceAll("\\u001B\\[[;?0-9]*[A-Za-z]", "");
 	}
 }
@@ -2,6 +2,7 @@ package app;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.subscription.MultiEmitter;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -9,7 +10,16 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class LogBroadcaster {
 	private static final int MAX_BUFFER_SIZE = 200;
 	private final List<MultiEmitter<? super String>> emitters = new CopyOnWriteArrayList<>();
-	private final Deque<String> buffer = new ArrayDeque<>();
+	private final Deque<Object> buffer = new ArrayDeque<>();
+	private final WireEvent.Verbosity verbosity;
+
+	public LogBroadcaster() {
+		this(WireEvent.Verbosity.PAYLOAD);
+	}
+
+	public LogBroadcaster(WireEvent.Verbosity verbosity) {
+		this.verbosity = verbosity;
+	}
 
 	public Multi<String> stream() {
 		return Multi.createFrom()
@@ -31,7 +41,25 @@ public class LogBroadcaster {
 		}
 	}
 
-	private void addToBuffer(String message) {
+	public void publish(WireEvent event) {
+		if (!event.isVisibleAt(verbosity)) {
+			return;
+		}
+		addToBuffer(event);
+		if (emitters.isEmpty()) {
+			return;
+		}
+		String message = event.render(verbosity);
+		for (MultiEmitter<? super String> emitter : emitters) {
+			emitter.emit(message);
+		}
+	}
+
+	public boolean hasSubscribers() {
+		return !emitters.isEmpty();
+	}
+
+	private void addToBuffer(Object message) {
 		synchronized (buffer) {
 			buffer.addLast(message);
 			while (buffer.size() > MAX_BUFFER_SIZE) {
@@ -41,8 +69,12 @@ public class LogBroadcaster {
 	}
 
 	private List<String> snapshot() {
+		List<String> messages = new ArrayList<>();
 		synchronized (buffer) {
-			return List.copyOf(buffer);
+			for (Object message : buffer) {
+				messages.add(message instanceof WireEvent event ? event.render(verbosity) : (String) message);
+			}
 		}
+		return messages;
 	}
 }
@@ -1,9 +1,21 @@
 package app;
 import com.fasterxml.jackson.databind.JsonNode;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface McpClient {
+  Set<String> IDEMPOTENT_METHODS = Set.of(
+      "ping",
+      "tools/list",
+      "resources/list",
+      "resources/templates/list",
+      "resources/read",
+      "prompts/list",
+      "prompts/get");
+
   CompletableFuture<JsonNode> initialize(JsonNode configuration);
 
   CompletableFuture<JsonNode> listTools();
@@ -14,7 +26,22 @@ public interface McpClient {
 
   CompletableFuture<JsonNode> callTool(String name, JsonNode arguments, JsonNode meta);
 
+  CompletableFuture<SpooledResult> callToolStreaming(String name, JsonNode arguments, JsonNode meta);
+
   CompletableFuture<JsonNode> readResource(String uri);
 
   CompletableFuture<JsonNode> getPrompt(String name, JsonNode arguments);
+
+  CompletableFuture<List<JsonNode>> batch(List<BatchCall> calls);
+
+  void onNotification(Consumer<JsonNode> handler);
+
+  Map<String, Long> metrics();
+
+  default void close() {
+  }
+
+  static boolean isIdempotent(String method) {
+    return method != null && IDEMPOTENT_METHODS.contains(method);
+  }
 }
@@ -7,6 +7,7 @@ import io.smallrye.mutiny.Multi;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
@@ -17,13 +18,21 @@ import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import org.jboss.resteasy.reactive.RestStreamElementType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import org.jboss.logging.Logger;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Base64;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 @Path("/servers")
@@ -31,7 +40,6 @@ import java.util.concurrent.TimeUnit;
 @Consumes(MediaType.APPLICATION_JSON)
 public class McpResource {
 	private static final Logger LOGGER = Logger.getLogger(McpResource.class);
-	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
 	@Inject ServerRepository repository;
 	@Inject ServerSessions sessions;
 	@Inject ObjectMapper mapper;
@@ -61,6 +69,18 @@ public class McpResource {
 		config.oauthAuthorizationUrl = request.oauthAuthorizationUrl;
 		config.oauthTokenUrl = request.oauthTokenUrl;
 		config.oauthScopes = request.oauthScopes;
+		config.requestTimeoutMillis = request.requestTimeoutMillis;
+		if (request.methodTimeoutMillis != null) {
+			config.methodTimeoutMillis.putAll(request.methodTimeoutMillis);
+		}
+		config.adaptiveTimeouts = request.adaptiveTimeouts;
+		config.adaptiveTimeoutFactor = request.adaptiveTimeoutFactor;
+		config.poolMinInstances = request.poolMinInstances;
+		config.poolMaxInstances = request.poolMaxInstances;
+		config.warmStandby = request.warmStandby;
+		config.idleTimeoutMillis = request.idleTimeoutMillis;
+		config.maxRestarts = request.maxRestarts;
+		config.restartWindowMillis = request.restartWindowMillis;
 		ensureConfigSchema(config);
 		return config;
 	}
@@ -133,15 +153,48 @@ public class McpResource {
 		if (request.oauthScopes != null) {
 			config.oauthScopes = request.oauthScopes;
 		}
+		if (request.requestTimeoutMillis != null) {
+			config.requestTimeoutMillis = request.requestTimeoutMillis > 0 ? request.requestTimeoutMillis : null;
+		}
+		if (request.methodTimeoutMillis != null) {
+			config.methodTimeoutMillis = request.methodTimeoutMillis;
+		}
+		if (request.adaptiveTimeouts != null) {
+			config.adaptiveTimeouts = request.adaptiveTimeouts;
+		}
+		if (request.adaptiveTimeoutFactor != null) {
+			config.adaptiveTimeoutFactor = request.adaptiveTimeoutFactor;
+		}
+		if (request.poolMinInstances != null) {
+			config.poolMinInstances = request.poolMinInstances > 0 ? request.poolMinInstances : null;
+		}
+		if (request.poolMaxInstances != null) {
+			config.poolMaxInstances = request.poolMaxInstances > 0 ? request.poolMaxInstances : null;
+		}
+		if (request.warmStandby != null) {
+			config.warmStandby = request.warmStandby > 0 ? request.warmStandby : null;
+		}
+		if (request.idleTimeoutMillis != null) {
+			config.idleTimeoutMillis = request.idleTimeoutMillis >= 0 ? request.idleTimeoutMillis : null;
+		}
+		if (request.maxRestarts != null) {
+			config.maxRestarts = request.maxRestarts >= 0 ? request.maxRestarts : null;
+		}
+		if (request.restartWindowMillis != null) {
+			config.restartWindowMillis = request.restartWindowMillis > 0 ? request.restartWindowMillis : null;
+		}
 		if (hasConfiguration) {
 			config.configuration = request.configuration;
 		}
 		if (!newId.equals(serverName)) {
 			ServerConfig renamed = repository.rename(serverName, newId, config);
+			sessions.configChanged(serverName);
+			sessions.configChanged(newId);
 			ensureConfigSchema(renamed);
 			return renamed;
 		}
 		ServerConfig saved = repository.save(config);
+		sessions.configChanged(serverName);
 		ensureConfigSchema(saved);
 		return saved;
 	}
@@ -154,11 +207,28 @@ public class McpResource {
 	@POST
 	@Path("/{serverName}/start")
 	public ServerStatus startServer(@PathParam("serverName") String serverName) throws Exception {
+		long started = System.nanoTime();
+		Map<String, Long> phases = Collections.synchronizedMap(new LinkedHashMap<>());
 		ServerSession session = sessions.start(serverName);
+		phases.put("spawn", millisSince(started));
+		if (session.prewarmed) {
+			session.prewarmed = false;
+			session.logStream.publish(Instant.now().toString() + " initialize skipped, standby already initialized");
+			updateConfigSchemaFromInitialize(session.config, session.rawInitialize);
+			session.config.supportsTools = session.tools != null;
+			session.config.supportsResources = session.resources != null;
+			session.config.supportsPrompts = session.prompts != null;
+			repository.saveAsync(session.config);
+			phases.put("total", millisSince(started));
+			session.startPhases = new LinkedHashMap<>(phases);
+			return statusFor(session);
+		}
 		try {
 			session.logStream.publish(Instant.now().toString() + " initialize start");
 			logRpcRequest(session, "initialize", buildInitializeParams(session.config.configuration));
+			long initializeStarted = System.nanoTime();
 			session.rawInitialize = attemptInitialize(session, false);
+			phases.put("initialize", millisSince(initializeStarted));
 			session.capabilities = session.rawInitialize;
 			session.connected = true;
 			try {
@@ -169,10 +239,10 @@ public class McpResource {
 			}
 			session.logStream.publish(Instant.now().toString() + " initialize success");
 			updateConfigSchemaFromInitialize(session.config, session.rawInitialize);
-			session.tools = safeList(session, "tools/list", session.client::listTools, supported -> session.config.supportsTools = supported);
-			session.resources = safeList(session, "resources/list", session.client::listResources, supported -> session.config.supportsResources = supported);
-			session.prompts = safeList(session, "prompts/list", session.client::listPrompts, supported -> session.config.supportsPrompts = supported);
-			repository.save(session.config);
+			listFacets(session, phases);
+			repository.saveAsync(session.config);
+			phases.put("total", millisSince(started));
+			session.startPhases = new LinkedHashMap<>(phases);
 			return statusFor(session);
 		}
 		catch (Exception e) {
@@ -186,7 +256,7 @@ public class McpResource {
 		try {
 			return session.client
 				.initialize(session.config.configuration)
-				.get(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+				.get(session.timeouts.limitFor("initialize").toMillis(), TimeUnit.MILLISECONDS);
 		}
 		catch (Exception e) {
 			logRpcError(session, "initialize", e);
@@ -217,12 +287,14 @@ public class McpResource {
 
 	@GET
 	@Path("/{serverName}/facets")
-	public FacetsResponse facets(@PathParam("serverName") String serverName) throws Exception {
+	public FacetsResponse facets(
+			@PathParam("serverName") String serverName,
+			@QueryParam("refresh") @DefaultValue("true") boolean refresh) throws Exception {
 		ServerSession session = requireSession(serverName);
-		session.tools = safeList(session, "tools/list", session.client::listTools, supported -> session.config.supportsTools = supported);
-		session.resources = safeList(session, "resources/list", session.client::listResources, supported -> session.config.supportsResources = supported);
-		session.prompts = safeList(session, "prompts/list", session.client::listPrompts, supported -> session.config.supportsPrompts = supported);
-		repository.save(session.config);
+		if (refresh) {
+			listFacets(session, new ConcurrentHashMap<>());
+			repository.saveAsync(session.config);
+		}
 		FacetsResponse response = new FacetsResponse();
 		response.tools = session.tools;
 		response.resources = session.resources;
@@ -233,15 +305,61 @@ public class McpResource {
 
 	@POST
 	@Path("/{serverName}/invoke")
-	public JsonNode invoke(@PathParam("serverName") String serverName, InvokeRequest request) throws Exception {
+	public Response invoke(@PathParam("serverName") String serverName, InvokeRequest request) throws Exception {
 		ServerSession session = requireSession(serverName);
 		JsonNode args = parseJson(request.json);
 		logRpcRequest(session, "tools/call", buildToolCallParams(request.toolName, args, request.meta));
-		JsonNode result = session.client
-			.callTool(request.toolName, args, request.meta)
-			.get(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
-		logRpcResponse(session, "tools/call", result);
-		return result;
+		SpooledResult result = awaitSpooled(
+			session.client.callToolStreaming(request.toolName, args, request.meta),
+			session.timeouts.limitFor("tools/call"));
+		if (result.isInMemory()) {
+			JsonNode message = result.readMessage(mapper);
+			logRpcResponse(session, "tools/call", message);
+			return Response.ok(message).type(MediaType.APPLICATION_JSON).build();
+		}
+		// Spilled to disk: relay the raw response as a chunked body instead of parsing it back into memory.
+		session.logStream.publish(Instant.now().toString() + " rpc << tools/call response streamed " + result.messageLength + " bytes");
+		return Response.ok(relay(result, true)).type(MediaType.APPLICATION_JSON).build();
+	}
+
+	@POST
+	@Path("/{serverName}/invoke/stream")
+	public Response invokeStreaming(@PathParam("serverName") String serverName, InvokeRequest request) throws Exception {
+		ServerSession session = requireSession(serverName);
+		JsonNode args = parseJson(request.json);
+		logRpcRequest(session, "tools/call", buildToolCallParams(request.toolName, args, request.meta));
+		SpooledResult result = awaitSpooled(
+			session.client.callToolStreaming(request.toolName, args, request.meta),
+			session.timeouts.limitFor("tools/call"));
+		if (result.error) {
+			try {
+				throw new IllegalStateException(result.readMessage(mapper).get("error").toString());
+			}
+			finally {
+				result.delete();
+			}
+		}
+		session.logStream.publish(Instant.now().toString() + " rpc << tools/call result streamed " + result.length + " bytes");
+		return Response.ok(relay(result, false)).type(MediaType.APPLICATION_JSON).build();
+	}
+
+	@POST
+	@Path("/{serverName}/invoke/batch")
+	public ArrayNode invokeBatch(@PathParam("serverName") String serverName, List<InvokeRequest> requests) throws Exception {
+		ServerSession session = requireSession(serverName);
+		List<BatchCall> calls = new ArrayList<>();
+		for (InvokeRequest request : requests) {
+			JsonNode args = parseJson(request.json);
+			calls.add(new BatchCall("tools/call", buildToolCallParams(request.toolName, args, request.meta)));
+		}
+		session.logStream.publish(Instant.now().toString() + " rpc >> batch of " + calls.size() + " tools/call");
+		List<JsonNode> results = session.client
+			.batch(calls)
+			.get(session.timeouts.limitFor("tools/call").toMillis() * Math.max(1, calls.size()), TimeUnit.MILLISECONDS);
+		session.logStream.publish(Instant.now().toString() + " rpc << batch of " + results.size() + " responses");
+		ArrayNode response = mapper.createArrayNode();
+		results.forEach(response::add);
+		return response;
 	}
 
 	@POST
@@ -251,7 +369,7 @@ public class McpResource {
 		logRpcRequest(session, "resources/read", buildResourceParams(request.uri));
 		JsonNode result = session.client
 			.readResource(request.uri)
-			.get(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+			.get(session.timeouts.limitFor("resources/read").toMillis(), TimeUnit.MILLISECONDS);
 		logRpcResponse(session, "resources/read", result);
 		return result;
 	}
@@ -267,7 +385,7 @@ public class McpResource {
 		logRpcRequest(session, "resources/read", buildResourceParams(uri));
 		JsonNode result = session.client
 			.readResource(uri)
-			.get(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+			.get(session.timeouts.limitFor("resources/read").toMillis(), TimeUnit.MILLISECONDS);
 		logRpcResponse(session, "resources/read", result);
 		return buildResourceResponse(result, uri);
 	}
@@ -280,7 +398,7 @@ public class McpResource {
 		logRpcRequest(session, "prompts/get", buildPromptParams(request.name, args));
 		JsonNode result = session.client
 			.getPrompt(request.name, args)
-			.get(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+			.get(session.timeouts.limitFor("prompts/get").toMillis(), TimeUnit.MILLISECONDS);
 		logRpcResponse(session, "prompts/get", result);
 		return result;
 	}
@@ -381,14 +499,30 @@ public class McpResource {
 		return updated;
 	}
 
-	private ServerSession requireSession(String serverName) {
+	private ServerSession requireSession(String serverName) throws Exception {
 		ServerSession session = sessions.get(serverName);
+		if ((session == null || !session.isRunning()) && sessions.wasEvicted(serverName)) {
+			session = restartEvicted(serverName);
+		}
 		if (session == null || !session.isRunning()) {
 			throw new IllegalStateException("Server not running");
 		}
+		session.touch();
 		return session;
 	}
 
+	private ServerSession restartEvicted(String serverName) throws Exception {
+		synchronized (sessions.startLock(serverName)) {
+			ServerSession session = sessions.get(serverName);
+			if ((session != null && session.isRunning()) || !sessions.wasEvicted(serverName)) {
+				return session;
+			}
+			sessions.logStreamFor(serverName).publish(Instant.now().toString() + " restarting idle server on demand");
+			startServer(serverName);
+			return sessions.get(serverName);
+		}
+	}
+
 	private JsonNode parseJson(String json) throws Exception {
 		if (json == null || json.isBlank()) {
 			return mapper.createObjectNode();
@@ -404,26 +538,61 @@ public class McpResource {
 
 	private ServerStatus statusFor(ServerSession session) {
 		ServerStatus status = new ServerStatus(true, session.config.command, session.capabilities, session.rawInitialize);
+		status.metrics = session.client.metrics();
+		if (session.client instanceof ResilientMcpClient resilient) {
+			status.circuit = resilient.circuitState().name();
+		}
+		status.startPhases = session.startPhases;
 		return status;
 	}
 
-	private JsonNode safeList(
+	private void listFacets(ServerSession session, Map<String, Long> phases) throws Exception {
+		long started = System.nanoTime();
+		CompletableFuture<JsonNode> tools = listAsync(session, "tools/list", session.client::listTools, supported -> session.config.supportsTools = supported, phases);
+		CompletableFuture<JsonNode> resources = listAsync(session, "resources/list", session.client::listResources, supported -> session.config.supportsResources = supported, phases);
+		CompletableFuture<JsonNode> prompts = listAsync(session, "prompts/list", session.client::listPrompts, supported -> session.config.supportsPrompts = supported, phases);
+		CompletableFuture.allOf(tools, resources, prompts).get();
+		session.tools = tools.join();
+		session.resources = resources.join();
+		session.prompts = prompts.join();
+		phases.put("facets", millisSince(started));
+	}
+
+	private CompletableFuture<JsonNode> listAsync(
 		ServerSession session,
 		String method,
-		Supplier<java.util.concurrent.CompletableFuture<JsonNode>> call,
-		java.util.function.Consumer<Boolean> markSupported) throws Exception {
+		Supplier<CompletableFuture<JsonNode>> call,
+		Consumer<Boolean> markSupported,
+		Map<String, Long> phases) {
+		logRpcRequest(session, method, null);
+		long started = System.nanoTime();
+		CompletableFuture<JsonNode> request;
 		try {
-			logRpcRequest(session, method, null);
-			JsonNode result = call.get().get(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
-			markSupported.accept(true);
-			logRpcResponse(session, method, result);
-			return result;
+			request = call.get().copy();
 		}
-		catch (Exception e) {
-			markSupported.accept(false);
-			logRpcError(session, method, e);
-			return null;
+		catch (RuntimeException e) {
+			request = CompletableFuture.failedFuture(e);
 		}
+		return request
+			.orTimeout(session.timeouts.limitFor(method).toMillis(), TimeUnit.MILLISECONDS)
+			.handle(
+				(result, error) -> {
+					phases.put(method, millisSince(started));
+					if (error == null) {
+						markSupported.accept(true);
+						logRpcResponse(session, method, result);
+						return result;
+					}
+					markSupported.accept(false);
+					Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+					logRpcError(session, method, cause instanceof Exception exception ? exception : new Exception(cause));
+					return null;
+				}
+			);
+	}
+
+	private static long millisSince(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
 	}
 
 	private ObjectNode buildInitializeParams(JsonNode configuration) {
@@ -539,14 +708,35 @@ public class McpResource {
 		if (params != null) {
 			payload.set("params", params);
 		}
+		session.logStream.publish(WireEvent.rpc(WireEvent.Direction.OUT, method, payload));
+	}
+
+	private static SpooledResult awaitSpooled(CompletableFuture<SpooledResult> pending, Duration limit) throws Exception {
 		try {
-			session.logStream.publish(Instant.now().toString() + " rpc >> " + mapper.writeValueAsString(payload));
+			return pending.get(limit.toMillis(), TimeUnit.MILLISECONDS);
 		}
-		catch (Exception ignored) {
-			session.logStream.publish(Instant.now().toString() + " rpc >> " + method);
+		catch (Exception e) {
+			pending.thenAccept(SpooledResult::delete);
+			throw e;
 		}
 	}
 
+	private static StreamingOutput relay(SpooledResult result, boolean wholeMessage) {
+		return output -> {
+			try {
+				if (wholeMessage) {
+					result.transferMessageTo(output);
+				}
+				else {
+					result.transferTo(output);
+				}
+			}
+			finally {
+				result.delete();
+			}
+		};
+	}
+
 	private void logRpcResponse(ServerSession session, String method, JsonNode result) {
 		if (session == null || session.logStream == null) {
 			return;
@@ -555,12 +745,7 @@ public class McpResource {
 		payload.put("jsonrpc", "2.0");
 		payload.put("method", method);
 		payload.set("result", result == null ? mapper.nullNode() : result);
-		try {
-			session.logStream.publish(Instant.now().toString() + " rpc << " + mapper.writeValueAsString(payload));
-		}
-		catch (Exception ignored) {
-			session.logStream.publish(Instant.now().toString() + " rpc << " + method);
-		}
+		session.logStream.publish(WireEvent.rpc(WireEvent.Direction.IN, method, payload));
 	}
 
 	private void logRpcError(ServerSession session, String method, Exception error) {
@@ -646,9 +831,11 @@ public class McpResource {
 		}
 		ServerSession session = sessions.start(config.id);
 		try {
-			JsonNode initialize = session.client
-				.initialize(config.configuration)
-				.get(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+			JsonNode initialize = session.prewarmed
+				? session.rawInitialize
+				: session.client
+					.initialize(config.configuration)
+					.get(session.timeouts.limitFor("initialize").toMillis(), TimeUnit.MILLISECONDS);
 			session.rawInitialize = initialize;
 			session.connected = true;
 			updateConfigSchemaFromInitialize(config, initialize);
@@ -704,6 +891,16 @@ public class McpResource {
 		public String oauthAuthorizationUrl;
 		public String oauthTokenUrl;
 		public String oauthScopes;
+		public Long requestTimeoutMillis;
+		public Map<String, Long> methodTimeoutMillis;
+		public boolean adaptiveTimeouts;
+		public Double adaptiveTimeoutFactor;
+		public Integer poolMinInstances;
+		public Integer poolMaxInstances;
+		public Integer warmStandby;
+		public Long idleTimeoutMillis;
+		public Integer maxRestarts;
+		public Long restartWindowMillis;
 		public JsonNode configuration;
 	}
 
@@ -727,6 +924,16 @@ public class McpResource {
 		public String oauthAuthorizationUrl;
 		public String oauthTokenUrl;
 		public String oauthScopes;
+		public Long requestTimeoutMillis;
+		public Map<String, Long> methodTimeoutMillis;
+		public Boolean adaptiveTimeouts;
+		public Double adaptiveTimeoutFactor;
+		public Integer poolMinInstances;
+		public Integer poolMaxInstances;
+		public Integer warmStandby;
+		public Long idleTimeoutMillis;
+		public Integer maxRestarts;
+		public Long restartWindowMillis;
 		public JsonNode configuration;
 	}
 
@@ -765,6 +972,9 @@ public class McpResource {
 		public String command;
 		public JsonNode capabilities;
 		public JsonNode initialize;
+		public Map<String, Long> metrics;
+		public String circuit;
+		public Map<String, Long> startPhases;
 
 		public ServerStatus() {
 		}
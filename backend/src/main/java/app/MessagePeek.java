@@ -0,0 +1,69 @@
+package app;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+
+public class MessagePeek {
+	public boolean hasId;
+	public long id;
+	public boolean hasResult;
+	public boolean hasError;
+	public long resultOffset = -1;
+	public long resultLength;
+
+	public boolean hasResultRange() {
+		return resultOffset >= 0;
+	}
+
+	public static MessagePeek scan(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			return null;
+		}
+		MessagePeek peek = new MessagePeek();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.currentName();
+			JsonToken token = parser.nextToken();
+			if ("id".equals(name)) {
+				readId(parser, token, peek);
+			}
+			else if ("result".equals(name)) {
+				peek.hasResult = true;
+				if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+					long start = parser.currentTokenLocation().getByteOffset();
+					parser.skipChildren();
+					long end = parser.currentLocation().getByteOffset();
+					if (start >= 0 && end > start) {
+						peek.resultOffset = start;
+						peek.resultLength = end - start;
+					}
+				}
+			}
+			else if ("error".equals(name)) {
+				peek.hasError = true;
+				parser.skipChildren();
+			}
+			else {
+				parser.skipChildren();
+			}
+		}
+		return peek;
+	}
+
+	private static void readId(JsonParser parser, JsonToken token, MessagePeek peek) throws IOException {
+		if (token == JsonToken.VALUE_NUMBER_INT) {
+			peek.hasId = true;
+			peek.id = parser.getLongValue();
+		}
+		else if (token == JsonToken.VALUE_STRING) {
+			try {
+				peek.id = Long.parseLong(parser.getText().trim());
+				peek.hasId = true;
+			}
+			catch (NumberFormatException ignored) {
+			}
+		}
+		else {
+			parser.skipChildren();
+		}
+	}
+}
@@ -5,11 +5,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
 import java.net.URI;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
@@ -17,29 +17,38 @@ import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Base64;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 @ApplicationScoped
 public class OAuthService {
     private static final Logger LOGGER = Logger.getLogger(OAuthService.class);
-    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
     private static final Duration TOKEN_SKEW = Duration.ofSeconds(30);
     private final ServerRepository repository;
     private final ObjectMapper mapper;
-    private final HttpClient client;
+    private final HttpClients clients;
+    private final Duration requestTimeout;
 	private final Map<String, OAuthState> authStates = new ConcurrentHashMap<>();
 	private final Map<String, OAuthToken> tokens = new ConcurrentHashMap<>();
 	private final Map<String, AuthChallenge> challenges = new ConcurrentHashMap<>();
 	private final Map<String, String> lastAuthHeaders = new ConcurrentHashMap<>();
+	private final List<Consumer<String>> tokenListeners = new CopyOnWriteArrayList<>();
 
     @Inject
-    public OAuthService(ServerRepository repository, ObjectMapper mapper) {
+    public OAuthService(
+        ServerRepository repository,
+        ObjectMapper mapper,
+        HttpClients clients,
+        @ConfigProperty(name = "mcp.oauth.request-timeout", defaultValue = "15s") Duration requestTimeout) {
         this.repository = repository;
         this.mapper = mapper;
-        this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        this.clients = clients;
+        this.requestTimeout = requestTimeout;
     }
 
 	public void handleUnauthorized(String serverId, String wwwAuthenticate, String fallbackResource) {
@@ -254,6 +263,7 @@ public class OAuthService {
             token.expiresAt = Instant.now().plusSeconds(expiresIn);
         }
         tokens.put(serverId, token);
+        tokenChanged(serverId);
         authStates.remove(serverId);
         result.success = true;
         return result;
@@ -261,9 +271,22 @@ public class OAuthService {
 
     public void logout(String serverId) {
         tokens.remove(serverId);
+        tokenChanged(serverId);
         authStates.remove(serverId);
     }
 
+    public void onTokenChange(Consumer<String> listener) {
+        tokenListeners.add(listener);
+    }
+
+    public Instant tokenRefreshAt(String serverId) {
+        OAuthToken token = tokens.get(serverId);
+        if (token == null || token.expiresAt == null) {
+            return null;
+        }
+        return token.expiresAt.minus(TOKEN_SKEW);
+    }
+
     public Optional<String> getAuthorizationHeader(String serverId) {
         OAuthToken token = tokens.get(serverId);
         if (token == null || token.accessToken == null || token.accessToken.isBlank()) {
@@ -322,9 +345,14 @@ public class OAuthService {
             token.expiresAt = Instant.now().plusSeconds(expiresIn);
         }
         tokens.put(serverId, token);
+        tokenChanged(serverId);
         return true;
     }
 
+    private void tokenChanged(String serverId) {
+        tokenListeners.forEach(listener -> listener.accept(serverId));
+    }
+
     private boolean registerClientIfPossible(ServerConfig config, JsonNode metadata) {
         String registrationEndpoint = textValue(metadata.get("registration_endpoint"));
         if (registrationEndpoint == null || registrationEndpoint.isBlank()) {
@@ -387,11 +415,11 @@ public class OAuthService {
         try {
             HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
-                .timeout(REQUEST_TIMEOUT)
+                .timeout(requestTimeout)
                 .GET()
                 .header("Accept", "application/json")
                 .build();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            HttpResponse<String> response = clients.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
             if (response.statusCode() >= 400) {
                 return null;
             }
@@ -408,11 +436,11 @@ public class OAuthService {
             String json = mapper.writeValueAsString(body);
             HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
-                .timeout(REQUEST_TIMEOUT)
+                .timeout(requestTimeout)
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
                 .build();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            HttpResponse<String> response = clients.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
             if (response.statusCode() >= 400) {
                 return null;
             }
@@ -428,11 +456,11 @@ public class OAuthService {
         try {
             HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
-                .timeout(REQUEST_TIMEOUT)
+                .timeout(requestTimeout)
                 .header("Content-Type", "application/x-www-form-urlencoded")
                 .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
                 .build();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            HttpResponse<String> response = clients.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
             if (response.statusCode() >= 400) {
                 return null;
             }
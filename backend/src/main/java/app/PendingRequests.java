@@ -0,0 +1,342 @@
+package app;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+public class PendingRequests {
+	public enum Mode {
+		RESULT,
+		RAW,
+		SPOOLED
+	}
+
+	private static final int STRIPES = 16;
+	private static final int INITIAL_CAPACITY = 16;
+	private final Stripe[] stripes = new Stripe[STRIPES];
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicInteger spooled = new AtomicInteger();
+	private final AtomicLong timedOut = new AtomicLong();
+	private final Queue<List<Long>> batches = new ConcurrentLinkedQueue<>();
+	private final Consumer<Entry> timeoutListener;
+	private final RequestTimeouts timeouts;
+
+	public PendingRequests(Consumer<Entry> timeoutListener) {
+		this(timeoutListener, RequestTimeouts.fixed());
+	}
+
+	public PendingRequests(Consumer<Entry> timeoutListener, RequestTimeouts timeouts) {
+		this.timeoutListener = timeoutListener;
+		this.timeouts = timeouts;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	public <T> CompletableFuture<T> register(long id, String method, Mode mode) {
+		return register(id, method, mode, timeouts.timeoutFor(method));
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> register(long id, String method, Mode mode, Duration timeout) {
+		Entry entry = new Entry(id, method, mode, timeout);
+		long started = System.nanoTime();
+		entry.future.whenComplete(
+			(result, error) -> {
+				if (error == null) {
+					timeouts.record(method, System.nanoTime() - started);
+				}
+			}
+		);
+		stripeFor(id).put(id, entry);
+		size.incrementAndGet();
+		if (mode == Mode.SPOOLED) {
+			spooled.incrementAndGet();
+		}
+		if (timeout != null) {
+			DeadlineTimer.Timeout deadline = DeadlineTimer.shared().schedule(timeout, () -> expire(entry));
+			entry.future.whenComplete((result, error) -> deadline.cancel());
+		}
+		return (CompletableFuture<T>) entry.future;
+	}
+
+	public Entry get(long id) {
+		return stripeFor(id).get(id);
+	}
+
+	public Entry remove(long id) {
+		Entry entry = stripeFor(id).remove(id, null);
+		if (entry != null) {
+			removed(entry);
+		}
+		return entry;
+	}
+
+	public boolean remove(Entry expected) {
+		Entry entry = stripeFor(expected.id).remove(expected.id, expected);
+		if (entry != null) {
+			removed(entry);
+			return true;
+		}
+		return false;
+	}
+
+	public boolean isEmpty() {
+		return size.get() == 0;
+	}
+
+	public boolean hasSpooled() {
+		return spooled.get() > 0;
+	}
+
+	public long timedOutRequests() {
+		return timedOut.get();
+	}
+
+	public List<Entry> drain() {
+		List<Entry> drained = new ArrayList<>();
+		for (Stripe stripe : stripes) {
+			stripe.drainTo(drained);
+		}
+		drained.forEach(this::removed);
+		return drained;
+	}
+
+	public void failAll(Throwable error) {
+		drain().forEach(entry -> entry.fail(error));
+	}
+
+	public List<Entry> removeIf(Predicate<Entry> filter) {
+		List<Entry> removed = new ArrayList<>();
+		for (Stripe stripe : stripes) {
+			stripe.removeIf(filter, removed);
+		}
+		removed.forEach(this::removed);
+		return removed;
+	}
+
+	public void addBatch(List<Long> ids) {
+		batches.add(ids);
+	}
+
+	public void removeBatch(List<Long> ids) {
+		batches.remove(ids);
+	}
+
+	public boolean rejectBatch(BatchRejectedException error) {
+		// Only a batch with no entry answered yet can be the one refused; if several qualify, nothing is guessed.
+		List<Long> rejected = null;
+		for (List<Long> ids : batches) {
+			if (!ids.stream().allMatch(id -> get(id) != null)) {
+				continue;
+			}
+			if (rejected != null) {
+				return false;
+			}
+			rejected = ids;
+		}
+		if (rejected == null || !batches.remove(rejected)) {
+			return false;
+		}
+		for (long id : rejected) {
+			Entry entry = remove(id);
+			if (entry != null) {
+				entry.fail(error);
+			}
+		}
+		return true;
+	}
+
+	public void failBatchOf(long id, Throwable error) {
+		for (List<Long> ids : batches) {
+			if (!ids.contains(id)) {
+				continue;
+			}
+			for (long other : ids) {
+				Entry entry = remove(other);
+				if (entry != null) {
+					entry.fail(error);
+				}
+			}
+			return;
+		}
+	}
+
+	private void expire(Entry entry) {
+		if (!remove(entry)) {
+			return;
+		}
+		timedOut.incrementAndGet();
+		timeouts.recordTimeout(entry.method);
+		if (timeoutListener != null) {
+			timeoutListener.accept(entry);
+		}
+		entry.fail(new TimeoutException(entry.method + " timed out after " + entry.timeout.toMillis() + " ms"));
+	}
+
+	private void removed(Entry entry) {
+		size.decrementAndGet();
+		if (entry.mode == Mode.SPOOLED) {
+			spooled.decrementAndGet();
+		}
+	}
+
+	private Stripe stripeFor(long id) {
+		return stripes[(int) (mix(id) >>> 60) & (STRIPES - 1)];
+	}
+
+	private static long mix(long id) {
+		return id * 0x9E3779B97F4A7C15L;
+	}
+
+	public static final class Entry {
+		public final long id;
+		public final String method;
+		public final Mode mode;
+		public final Duration timeout;
+		private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+		private Entry(long id, String method, Mode mode, Duration timeout) {
+			this.id = id;
+			this.method = method;
+			this.mode = mode;
+			this.timeout = timeout;
+		}
+
+		public boolean complete(Object value) {
+			return future.complete(value);
+		}
+
+		public boolean fail(Throwable error) {
+			return future.completeExceptionally(error);
+		}
+	}
+
+	private static final class Stripe {
+		private long[] keys = new long[INITIAL_CAPACITY];
+		private Entry[] values = new Entry[INITIAL_CAPACITY];
+		private int count;
+
+		private synchronized void put(long id, Entry entry) {
+			if ((count + 1) * 2 > values.length) {
+				resize(values.length * 2);
+			}
+			int mask = values.length - 1;
+			int slot = slot(id, mask);
+			while (values[slot] != null) {
+				if (keys[slot] == id) {
+					values[slot] = entry;
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = id;
+			values[slot] = entry;
+			count++;
+		}
+
+		private synchronized Entry get(long id) {
+			int slot = find(id);
+			return slot < 0 ? null : values[slot];
+		}
+
+		private synchronized Entry remove(long id, Entry expected) {
+			int slot = find(id);
+			if (slot < 0) {
+				return null;
+			}
+			Entry entry = values[slot];
+			if (expected != null && entry != expected) {
+				return null;
+			}
+			deleteAt(slot);
+			return entry;
+		}
+
+		private synchronized void drainTo(List<Entry> target) {
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != null) {
+					target.add(values[i]);
+					values[i] = null;
+				}
+			}
+			count = 0;
+		}
+
+		private synchronized void removeIf(Predicate<Entry> filter, List<Entry> target) {
+			List<Entry> entries = new ArrayList<>(count);
+			drainTo(entries);
+			for (Entry entry : entries) {
+				if (filter.test(entry)) {
+					target.add(entry);
+				}
+				else {
+					put(entry.id, entry);
+				}
+			}
+		}
+
+		private int find(long id) {
+			int mask = values.length - 1;
+			int slot = slot(id, mask);
+			while (values[slot] != null) {
+				if (keys[slot] == id) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private void deleteAt(int slot) {
+			int mask = values.length - 1;
+			int hole = slot;
+			values[hole] = null;
+			count--;
+			int next = (hole + 1) & mask;
+			while (values[next] != null) {
+				int home = slot(keys[next], mask);
+				boolean between = hole <= next
+					? hole < home && home <= next
+					: hole < home || home <= next;
+				if (!between) {
+					keys[hole] = keys[next];
+					values[hole] = values[next];
+					values[next] = null;
+					hole = next;
+				}
+				next = (next + 1) & mask;
+			}
+		}
+
+		private void resize(int capacity) {
+			long[] oldKeys = keys;
+			Entry[] oldValues = values;
+			keys = new long[capacity];
+			values = new Entry[capacity];
+			int mask = capacity - 1;
+			for (int i = 0; i < oldValues.length; i++) {
+				if (oldValues[i] == null) {
+					continue;
+				}
+				int slot = slot(oldKeys[i], mask);
+				while (values[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+
+		private static int slot(long id, int mask) {
+			return (int) (mix(id) >>> 32) & mask;
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package app;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class PooledMcpClient implements McpClient {
+	private final CopyOnWriteArrayList<Member> members = new CopyOnWriteArrayList<>();
+	private final Supplier<Member> spawner;
+	private final int minInstances;
+	private final int maxInstances;
+	private final Duration idleTimeout;
+	private final SessionThreads threads;
+	private final Consumer<String> logSink;
+	private final AtomicBoolean growing = new AtomicBoolean();
+	private final AtomicLong spawned = new AtomicLong();
+	private final AtomicLong exited = new AtomicLong();
+	private final AtomicLong retired = new AtomicLong();
+	private final CompletableFuture<Void> drained = new CompletableFuture<>();
+	private volatile JsonNode configuration;
+	private volatile boolean initialized;
+	private volatile boolean closed;
+	private volatile Consumer<JsonNode> notificationHandler;
+	private volatile DeadlineTimer.Timeout idleCheck;
+
+	public PooledMcpClient(
+		List<Member> initial,
+		Supplier<Member> spawner,
+		int maxInstances,
+		Duration idleTimeout,
+		SessionThreads threads,
+		Consumer<String> logSink) {
+		this.spawner = spawner;
+		this.minInstances = initial.size();
+		this.maxInstances = Math.max(initial.size(), maxInstances);
+		this.idleTimeout = idleTimeout;
+		this.threads = threads;
+		this.logSink = logSink;
+		members.addAll(initial);
+		spawned.addAndGet(initial.size());
+		initial.forEach(this::watch);
+	}
+
+	public int size() {
+		return members.size();
+	}
+
+	public CompletableFuture<Void> drained() {
+		return drained;
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> initialize(JsonNode configuration) {
+		this.configuration = configuration;
+		List<Member> starting = List.copyOf(members);
+		List<CompletableFuture<JsonNode>> results = new ArrayList<>();
+		for (Member member : starting) {
+			results.add(member.client.initialize(configuration));
+		}
+		return CompletableFuture.allOf(results.toArray(CompletableFuture<?>[]::new))
+			.handle((ignored, error) -> settleInitialize(starting, results));
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> listTools() {
+		return onRepresentative(McpClient::listTools);
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> listResources() {
+		return onRepresentative(McpClient::listResources);
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> listPrompts() {
+		return onRepresentative(McpClient::listPrompts);
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> callTool(String name, JsonNode arguments, JsonNode meta) {
+		return routed(client -> client.callTool(name, arguments, meta));
+	}
+
+	@Override
+	public CompletableFuture<SpooledResult> callToolStreaming(String name, JsonNode arguments, JsonNode meta) {
+		return routed(client -> client.callToolStreaming(name, arguments, meta));
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> readResource(String uri) {
+		return routed(client -> client.readResource(uri));
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> getPrompt(String name, JsonNode arguments) {
+		return routed(client -> client.getPrompt(name, arguments));
+	}
+
+	@Override
+	public CompletableFuture<List<JsonNode>> batch(List<BatchCall> calls) {
+		// Request ids are per connection, so a batch stays on one instance.
+		return routed(client -> client.batch(calls));
+	}
+
+	@Override
+	public void onNotification(Consumer<JsonNode> handler) {
+		this.notificationHandler = handler;
+		for (Member member : members) {
+			listen(member);
+		}
+	}
+
+	@Override
+	public Map<String, Long> metrics() {
+		Member representative = representative();
+		Map<String, Long> metrics = new LinkedHashMap<>(representative == null ? Map.of() : representative.client.metrics());
+		long outstanding = 0;
+		for (Member member : members) {
+			outstanding += Math.max(0, member.outstanding.get());
+		}
+		metrics.put("poolInstances", (long) members.size());
+		metrics.put("poolOutstanding", outstanding);
+		metrics.put("poolSpawned", spawned.get());
+		metrics.put("poolExited", exited.get());
+		metrics.put("poolRetired", retired.get());
+		return metrics;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		DeadlineTimer.Timeout check = idleCheck;
+		if (check != null) {
+			check.cancel();
+		}
+		List<Member> stopping = List.copyOf(members);
+		members.clear();
+		for (Member member : stopping) {
+			member.client.close();
+			member.process.destroy();
+		}
+	}
+
+	private JsonNode settleInitialize(List<Member> starting, List<CompletableFuture<JsonNode>> results) {
+		JsonNode representativeResult = null;
+		Throwable firstError = null;
+		for (int i = 0; i < starting.size(); i++) {
+			Member member = starting.get(i);
+			CompletableFuture<JsonNode> result = results.get(i);
+			if (!result.isCompletedExceptionally()) {
+				member.ready = true;
+				if (representativeResult == null) {
+					representativeResult = result.join();
+				}
+				continue;
+			}
+			Throwable error = result.handle((value, failure) -> failure).join();
+			if (firstError == null) {
+				firstError = error;
+			}
+			logSink.accept("!! pool instance failed to initialize: " + error.getMessage());
+			members.remove(member);
+			member.client.close();
+			member.process.destroy();
+		}
+		if (representativeResult == null) {
+			throw new IllegalStateException("No pool instance initialized", firstError);
+		}
+		initialized = true;
+		scheduleIdleCheck();
+		logSink.accept("pool ready with " + members.size() + " of " + starting.size() + " instances");
+		return representativeResult;
+	}
+
+	private void watch(Member member) {
+		member.process.onExit()
+			.whenComplete(
+				(process, error) -> {
+					if (!members.remove(member)) {
+						return;
+					}
+					exited.incrementAndGet();
+					member.client.close();
+					if (closed) {
+						return;
+					}
+					logSink.accept("!! pool instance exited with code " + member.process.exitValue() + ", " + members.size() + " left");
+					if (members.isEmpty()) {
+						drained.complete(null);
+					}
+				}
+			);
+	}
+
+	private <T> CompletableFuture<T> onRepresentative(Function<McpClient, CompletableFuture<T>> call) {
+		return dispatch(representative(), call);
+	}
+
+	private <T> CompletableFuture<T> routed(Function<McpClient, CompletableFuture<T>> call) {
+		Member member = leastLoaded();
+		if (member != null && member.outstanding.get() > 0) {
+			grow();
+		}
+		return dispatch(member, call);
+	}
+
+	private <T> CompletableFuture<T> dispatch(Member member, Function<McpClient, CompletableFuture<T>> call) {
+		if (member == null) {
+			return CompletableFuture.failedFuture(new IllegalStateException("No running instance in pool"));
+		}
+		if (!member.acquire()) {
+			// Retired between picking and sending; the next pick no longer sees it.
+			return dispatch(leastLoaded(), call);
+		}
+		CompletableFuture<T> result;
+		try {
+			result = call.apply(member.client);
+		}
+		catch (RuntimeException e) {
+			result = CompletableFuture.failedFuture(e);
+		}
+		return result.whenComplete(
+			(value, error) -> {
+				member.lastUsed = System.nanoTime();
+				member.outstanding.decrementAndGet();
+			}
+		);
+	}
+
+	private Member representative() {
+		for (Member member : members) {
+			if (member.ready) {
+				return member;
+			}
+		}
+		return members.isEmpty() ? null : members.get(0);
+	}
+
+	private Member leastLoaded() {
+		Member best = null;
+		int bestLoad = Integer.MAX_VALUE;
+		for (Member member : members) {
+			if (!member.ready) {
+				continue;
+			}
+			int load = member.outstanding.get();
+			if (load >= 0 && load < bestLoad) {
+				best = member;
+				bestLoad = load;
+			}
+		}
+		return best != null ? best : representative();
+	}
+
+	private void grow() {
+		if (!initialized || closed || members.size() >= maxInstances || !growing.compareAndSet(false, true)) {
+			return;
+		}
+		CompletableFuture<Member> spawning = new CompletableFuture<>();
+		threads.start(
+			"mcp-pool-spawn",
+			() -> {
+				try {
+					spawning.complete(spawner.get());
+				}
+				catch (RuntimeException e) {
+					spawning.completeExceptionally(e);
+				}
+			}
+		);
+		spawning
+			.thenCompose(
+				member -> {
+					watch(member);
+					listen(member);
+					return member.client.initialize(configuration)
+						.whenComplete(
+							(result, error) -> {
+								if (error != null || closed) {
+									member.client.close();
+									member.process.destroy();
+									return;
+								}
+								member.ready = true;
+								members.add(member);
+								spawned.incrementAndGet();
+								logSink.accept("pool grew to " + members.size() + " instances");
+							}
+						);
+				}
+			)
+			.whenComplete(
+				(result, error) -> {
+					growing.set(false);
+					if (error != null && !closed) {
+						logSink.accept("!! pool failed to add an instance: " + error.getMessage());
+					}
+				}
+			);
+	}
+
+	private void scheduleIdleCheck() {
+		if (closed || maxInstances == minInstances) {
+			return;
+		}
+		Duration interval = idleTimeout.dividedBy(2);
+		idleCheck = DeadlineTimer.shared().schedule(
+			interval.compareTo(Duration.ofSeconds(1)) < 0 ? Duration.ofSeconds(1) : interval,
+			() -> threads.start(
+				"mcp-pool-idle",
+				() -> {
+					try {
+						retireIdle();
+					}
+					finally {
+						scheduleIdleCheck();
+					}
+				}
+			)
+		);
+	}
+
+	private void retireIdle() {
+		long now = System.nanoTime();
+		for (Member member : members) {
+			if (closed || members.size() <= minInstances) {
+				return;
+			}
+			if (!member.ready || member == representative() || now - member.lastUsed < idleTimeout.toNanos()) {
+				continue;
+			}
+			// Claims the idle instance so no request is routed to it while it shuts down.
+			if (!member.outstanding.compareAndSet(0, -1)) {
+				continue;
+			}
+			members.remove(member);
+			retired.incrementAndGet();
+			member.client.close();
+			member.process.destroy();
+			logSink.accept("pool shrank to " + members.size() + " instances after " + idleTimeout.toSeconds() + " s idle");
+		}
+	}
+
+	private void listen(Member member) {
+		member.client.onNotification(
+			notification -> {
+				Consumer<JsonNode> handler = notificationHandler;
+				if (handler == null) {
+					return;
+				}
+				// Every instance announces the same list changes; only the representative's drive a refresh.
+				if (notification.path("method").asText("").endsWith("/list_changed") && member != representative()) {
+					return;
+				}
+				handler.accept(notification);
+			}
+		);
+	}
+
+	public static final class Member {
+		public final McpClient client;
+		public final Process process;
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private volatile boolean ready;
+		private volatile long lastUsed = System.nanoTime();
+
+		public Member(McpClient client, Process process) {
+			this.client = client;
+			this.process = process;
+		}
+
+		private boolean acquire() {
+			while (true) {
+				int load = outstanding.get();
+				if (load < 0) {
+					return false;
+				}
+				if (outstanding.compareAndSet(load, load + 1)) {
+					return true;
+				}
+			}
+		}
+	}
+}
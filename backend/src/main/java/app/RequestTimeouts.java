@@ -0,0 +1,180 @@
+package app;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class RequestTimeouts {
+	public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(15);
+	private static final String ANY_METHOD = "*";
+	private static final double DEFAULT_FACTOR = 3.0;
+	private static final Duration ADAPTIVE_FLOOR = Duration.ofSeconds(1);
+	private static final long MIN_SAMPLES = 20;
+	private static final long WINDOW_NANOS = Duration.ofMinutes(1).toNanos();
+	// One tool's latency says nothing about another's, and they all share this method.
+	private static final Set<String> FIXED_METHODS = Set.of("tools/call");
+	private final Duration defaultTimeout;
+	private final Map<String, Duration> methodTimeouts;
+	private final boolean adaptive;
+	private final double factor;
+	private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	public RequestTimeouts(Duration defaultTimeout, Map<String, Duration> methodTimeouts, boolean adaptive, double factor) {
+		this.defaultTimeout = defaultTimeout;
+		this.methodTimeouts = methodTimeouts;
+		this.adaptive = adaptive;
+		this.factor = factor > 0 ? factor : DEFAULT_FACTOR;
+	}
+
+	public static RequestTimeouts fixed() {
+		return new RequestTimeouts(DEFAULT_TIMEOUT, Map.of(), false, DEFAULT_FACTOR);
+	}
+
+	public static RequestTimeouts forConfig(ServerConfig config) {
+		Map<String, Duration> methods = new ConcurrentHashMap<>();
+		Duration fallback = positive(config.requestTimeoutMillis);
+		if (config.methodTimeoutMillis != null) {
+			config.methodTimeoutMillis.forEach(
+				(method, millis) -> {
+					Duration timeout = positive(millis);
+					if (method == null || timeout == null || ANY_METHOD.equals(method.trim())) {
+						return;
+					}
+					methods.put(method.trim(), timeout);
+				}
+			);
+			if (fallback == null) {
+				fallback = positive(config.methodTimeoutMillis.get(ANY_METHOD));
+			}
+		}
+		double factor = config.adaptiveTimeoutFactor == null ? DEFAULT_FACTOR : config.adaptiveTimeoutFactor;
+		return new RequestTimeouts(fallback == null ? DEFAULT_TIMEOUT : fallback, methods, config.adaptiveTimeouts, factor);
+	}
+
+	// Callers waiting from outside the client use this so they never give up before its own deadline.
+	public Duration limitFor(String method) {
+		Duration configured = method == null ? null : methodTimeouts.get(method);
+		return configured == null ? defaultTimeout : configured;
+	}
+
+	public Duration timeoutFor(String method) {
+		Duration limit = limitFor(method);
+		if (!adaptive || method == null || FIXED_METHODS.contains(method)) {
+			return limit;
+		}
+		Histogram histogram = histograms.get(method);
+		long p99 = histogram == null ? -1 : histogram.percentile(0.99, MIN_SAMPLES);
+		if (p99 < 0) {
+			return limit;
+		}
+		long adaptiveMillis = Math.max(ADAPTIVE_FLOOR.toMillis(), (long) Math.ceil(p99 * factor));
+		return adaptiveMillis < limit.toMillis() ? Duration.ofMillis(adaptiveMillis) : limit;
+	}
+
+	public void record(String method, long elapsedNanos) {
+		if (method == null || elapsedNanos < 0) {
+			return;
+		}
+		histograms.computeIfAbsent(method, ignored -> new Histogram())
+			.record(elapsedNanos / 1_000_000L, System.nanoTime());
+	}
+
+	public void recordTimeout(String method) {
+		if (method == null) {
+			return;
+		}
+		// A request cut off by the deadline took at least the limit; counting it there lets the deadline grow back.
+		record(method, limitFor(method).toNanos());
+	}
+
+	public Map<String, Long> metrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>();
+		histograms.forEach(
+			(method, histogram) -> {
+				long p99 = histogram.percentile(0.99, 1);
+				if (p99 >= 0) {
+					metrics.put("latencyP99Ms." + method, p99);
+				}
+				if (adaptive && !FIXED_METHODS.contains(method)) {
+					metrics.put("timeoutMs." + method, timeoutFor(method).toMillis());
+				}
+			}
+		);
+		return metrics;
+	}
+
+	private static Duration positive(Long millis) {
+		return millis == null || millis <= 0 ? null : Duration.ofMillis(millis);
+	}
+
+	private static final class Histogram {
+		private static final int LINEAR = 16;
+		private static final int SUB_BUCKETS = 8;
+		private static final int BUCKETS = LINEAR + (31 - 4 + 1) * SUB_BUCKETS;
+		private volatile AtomicLongArray current = new AtomicLongArray(BUCKETS);
+		private volatile AtomicLongArray previous = new AtomicLongArray(BUCKETS);
+		private volatile long windowStart = System.nanoTime();
+
+		private void record(long millis, long now) {
+			rotate(now);
+			current.incrementAndGet(bucket(millis));
+		}
+
+		private long percentile(double quantile, long minSamples) {
+			rotate(System.nanoTime());
+			AtomicLongArray recent = current;
+			AtomicLongArray older = previous;
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				total += recent.get(i) + older.get(i);
+			}
+			if (total == 0 || total < minSamples) {
+				return -1;
+			}
+			long target = (long) Math.ceil(total * quantile);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += recent.get(i) + older.get(i);
+				if (seen >= target) {
+					return upperBound(i);
+				}
+			}
+			return upperBound(BUCKETS - 1);
+		}
+
+		private void rotate(long now) {
+			if (now - windowStart < WINDOW_NANOS) {
+				return;
+			}
+			synchronized (this) {
+				long elapsed = now - windowStart;
+				if (elapsed < WINDOW_NANOS) {
+					return;
+				}
+				previous = elapsed < 2 * WINDOW_NANOS ? current : new AtomicLongArray(BUCKETS);
+				current = new AtomicLongArray(BUCKETS);
+				windowStart = now;
+			}
+		}
+
+		private static int bucket(long millis) {
+			if (millis < LINEAR) {
+				return (int) Math.max(0, millis);
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(millis);
+			int mantissa = (int) (millis >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+			return Math.min(BUCKETS - 1, LINEAR + (exponent - 4) * SUB_BUCKETS + mantissa);
+		}
+
+		private static long upperBound(int bucket) {
+			if (bucket < LINEAR) {
+				return bucket;
+			}
+			int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+			int mantissa = (bucket - LINEAR) % SUB_BUCKETS;
+			return ((SUB_BUCKETS + mantissa + 1L) << (exponent - 3)) - 1;
+		}
+	}
+}
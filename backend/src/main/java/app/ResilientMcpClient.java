@@ -0,0 +1,255 @@
+package app;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class ResilientMcpClient implements McpClient {
+	private final McpClient delegate;
+	private final CircuitBreaker breaker;
+	private final RequestTimeouts timeouts;
+	private final Consumer<String> logSink;
+	private final int maxConcurrent;
+	private final int maxQueued;
+	private final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+	private int active;
+	private long bulkheadRejected;
+	private long queueTimeouts;
+
+	public ResilientMcpClient(
+		McpClient delegate,
+		CircuitBreaker breaker,
+		RequestTimeouts timeouts,
+		Consumer<String> logSink,
+		int maxConcurrent,
+		int maxQueued) {
+		this.delegate = delegate;
+		this.breaker = breaker;
+		this.timeouts = timeouts;
+		this.logSink = logSink;
+		this.maxConcurrent = Math.max(1, maxConcurrent);
+		this.maxQueued = Math.max(0, maxQueued);
+	}
+
+	public CircuitBreaker.State circuitState() {
+		return breaker.state();
+	}
+
+	public synchronized int inFlight() {
+		return active + queue.size();
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> initialize(JsonNode configuration) {
+		return delegate.initialize(configuration)
+			.whenComplete(
+				(result, error) -> {
+					if (error == null) {
+						breaker.reset();
+					}
+				}
+			);
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> listTools() {
+		return guarded("tools/list", delegate::listTools);
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> listResources() {
+		return guarded("resources/list", delegate::listResources);
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> listPrompts() {
+		return guarded("prompts/list", delegate::listPrompts);
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> callTool(String name, JsonNode arguments, JsonNode meta) {
+		return guarded("tools/call", () -> delegate.callTool(name, arguments, meta));
+	}
+
+	@Override
+	public CompletableFuture<SpooledResult> callToolStreaming(String name, JsonNode arguments, JsonNode meta) {
+		return guarded("tools/call", () -> delegate.callToolStreaming(name, arguments, meta));
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> readResource(String uri) {
+		return guarded("resources/read", () -> delegate.readResource(uri));
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> getPrompt(String name, JsonNode arguments) {
+		return guarded("prompts/get", () -> delegate.getPrompt(name, arguments));
+	}
+
+	@Override
+	public CompletableFuture<List<JsonNode>> batch(List<BatchCall> calls) {
+		return guarded("batch", () -> delegate.batch(calls));
+	}
+
+	@Override
+	public void onNotification(Consumer<JsonNode> handler) {
+		delegate.onNotification(handler);
+	}
+
+	@Override
+	public Map<String, Long> metrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>(delegate.metrics());
+		metrics.put("circuitState", (long) breaker.state().ordinal());
+		metrics.put("circuitOpenings", breaker.openings());
+		metrics.put("circuitRejected", breaker.rejected());
+		synchronized (this) {
+			metrics.put("bulkheadActive", (long) active);
+			metrics.put("bulkheadQueued", (long) queue.size());
+			metrics.put("bulkheadRejected", bulkheadRejected);
+			metrics.put("bulkheadQueueTimeouts", queueTimeouts);
+		}
+		return metrics;
+	}
+
+	@Override
+	public void close() {
+		List<Task<?>> abandoned;
+		synchronized (this) {
+			abandoned = List.copyOf(queue);
+			queue.clear();
+		}
+		abandoned.forEach(task -> task.fail(new IllegalStateException("Client closed")));
+		delegate.close();
+	}
+
+	private <T> CompletableFuture<T> guarded(String method, Supplier<CompletableFuture<T>> call) {
+		if (!breaker.tryAcquire()) {
+			return CompletableFuture.failedFuture(new RejectedExecutionException("Circuit open for " + method + ", server is failing"));
+		}
+		Task<T> task = new Task<>(method, call);
+		synchronized (this) {
+			if (active < maxConcurrent) {
+				active++;
+			}
+			else if (queue.size() < maxQueued) {
+				queue.addLast(task);
+				task.deadline = DeadlineTimer.shared().schedule(timeouts.limitFor(method), () -> expire(task));
+				return task.result;
+			}
+			else {
+				bulkheadRejected++;
+				breaker.release();
+				return CompletableFuture.failedFuture(new RejectedExecutionException(
+					"Too many concurrent requests (" + maxConcurrent + " running, " + maxQueued + " queued)"));
+			}
+		}
+		run(task);
+		return task.result;
+	}
+
+	private <T> void run(Task<T> task) {
+		CompletableFuture<T> call;
+		try {
+			call = task.call.get();
+		}
+		catch (RuntimeException e) {
+			call = CompletableFuture.failedFuture(e);
+		}
+		call.whenComplete(
+			(value, error) -> {
+				finished();
+				if (error == null) {
+					breaker.onSuccess();
+					task.result.complete(value);
+					return;
+				}
+				Throwable cause = unwrap(error);
+				record(task.method, cause);
+				task.result.completeExceptionally(cause);
+			}
+		);
+	}
+
+	private void finished() {
+		Task<?> next;
+		synchronized (this) {
+			next = queue.pollFirst();
+			if (next == null) {
+				active--;
+				return;
+			}
+		}
+		if (next.deadline != null) {
+			next.deadline.cancel();
+		}
+		run(next);
+	}
+
+	private void expire(Task<?> task) {
+		synchronized (this) {
+			if (!queue.remove(task)) {
+				return;
+			}
+			queueTimeouts++;
+		}
+		breaker.release();
+		task.fail(new TimeoutException(task.method + " waited " + timeouts.limitFor(task.method).toMillis() + " ms for a free slot"));
+	}
+
+	private void record(String method, Throwable cause) {
+		if (cause instanceof HttpStatusException status && status.retryAfter != null && status.isServerFailure()) {
+			logSink.accept("!! " + method + " got HTTP " + status.status + ", backing off for " + status.retryAfter.toMillis() + " ms");
+			breaker.backOff(status.retryAfter);
+			return;
+		}
+		if (!isServerFailure(cause)) {
+			breaker.onSuccess();
+			return;
+		}
+		CircuitBreaker.State before = breaker.state();
+		breaker.onFailure();
+		if (before != CircuitBreaker.State.OPEN && breaker.state() == CircuitBreaker.State.OPEN) {
+			logSink.accept("!! circuit opened after " + method + " failed: " + cause.getMessage());
+		}
+	}
+
+	private static boolean isServerFailure(Throwable cause) {
+		if (cause instanceof HttpStatusException status) {
+			return status.isServerFailure();
+		}
+		return cause instanceof TimeoutException || cause instanceof IOException;
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		Throwable current = error;
+		while ((current instanceof CompletionException || current instanceof ExecutionException) && current.getCause() != null) {
+			current = current.getCause();
+		}
+		return current;
+	}
+
+	private static final class Task<T> {
+		private final String method;
+		private final Supplier<CompletableFuture<T>> call;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+		private volatile DeadlineTimer.Timeout deadline;
+
+		private Task(String method, Supplier<CompletableFuture<T>> call) {
+			this.method = method;
+			this.call = call;
+		}
+
+		private void fail(Throwable error) {
+			result.completeExceptionally(error);
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package app;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+@ApplicationScoped
+public class ResponseSpool {
+	private static final Logger LOGGER = Logger.getLogger(ResponseSpool.class);
+	private static final String PREFIX = "mcp-result-";
+	private static final String SUFFIX = ".json";
+	private final ObjectMapper mapper;
+	private final Path directory;
+	private final int threshold;
+	private final Duration maxAge;
+	private final AtomicLong spilled = new AtomicLong();
+	private final AtomicLong spilledBytes = new AtomicLong();
+	private volatile boolean prepared;
+	private volatile boolean stopped;
+	private volatile DeadlineTimer.Timeout sweep;
+
+	@Inject
+	public ResponseSpool(
+		ObjectMapper mapper,
+		@ConfigProperty(name = "mcp.data-dir") String dataDir,
+		@ConfigProperty(name = "mcp.spool.threshold-bytes", defaultValue = "4194304") int thresholdBytes,
+		@ConfigProperty(name = "mcp.spool.max-age", defaultValue = "15m") Duration maxAge) {
+		this.mapper = mapper;
+		this.directory = Path.of(dataDir).resolve("spool");
+		this.threshold = Math.max(0, thresholdBytes);
+		this.maxAge = maxAge;
+	}
+
+	@PreDestroy
+	void stop() {
+		stopped = true;
+		DeadlineTimer.Timeout current = sweep;
+		if (current != null) {
+			current.cancel();
+		}
+	}
+
+	public int threshold() {
+		return threshold;
+	}
+
+	public long spilled() {
+		return spilled.get();
+	}
+
+	public long spilledBytes() {
+		return spilledBytes.get();
+	}
+
+	public SpooledResult spool(byte[] data, int offset, int length, MessagePeek peek) throws IOException {
+		if (length <= threshold) {
+			byte[] copy = Arrays.copyOfRange(data, offset, offset + length);
+			return SpooledResult.inMemory(copy, length, peek != null ? peek : peek(copy, length));
+		}
+		Path file = createFile();
+		try (OutputStream output = Files.newOutputStream(file)) {
+			output.write(data, offset, length);
+		}
+		catch (IOException e) {
+			deleteQuietly(file);
+			throw e;
+		}
+		spilled(length);
+		return SpooledResult.inFile(file, length, peek != null ? peek : peek(file));
+	}
+
+	public SpooledResult spool(JsonNode message) throws IOException {
+		Sink sink = newSink();
+		try {
+			mapper.writeValue(sink, message == null ? mapper.nullNode() : message);
+		}
+		catch (IOException e) {
+			sink.discard();
+			throw e;
+		}
+		return sink.finish();
+	}
+
+	public Sink newSink() {
+		return new Sink();
+	}
+
+	public HttpResponse.BodySubscriber<SpooledResult> bodySubscriber() {
+		return new SinkSubscriber(newSink());
+	}
+
+	private Path createFile() throws IOException {
+		if (!prepared) {
+			prepare();
+		}
+		return Files.createTempFile(directory, PREFIX, SUFFIX);
+	}
+
+	private synchronized void prepare() throws IOException {
+		if (prepared) {
+			return;
+		}
+		Files.createDirectories(directory);
+		try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path file : stale) {
+				deleteQuietly(file);
+			}
+		}
+		catch (IOException e) {
+			LOGGER.warnf(e, "Failed to clean spool directory %s", directory);
+		}
+		prepared = true;
+		scheduleSweep();
+	}
+
+	private void scheduleSweep() {
+		if (stopped || maxAge.isZero() || maxAge.isNegative()) {
+			return;
+		}
+		sweep = DeadlineTimer.shared().schedule(maxAge.dividedBy(2), () -> {
+			try {
+				sweepAbandoned();
+			}
+			finally {
+				scheduleSweep();
+			}
+		});
+	}
+
+	private void sweepAbandoned() {
+		// Relays that never ran, e.g. because the browser went away, leave their file behind.
+		FileTime cutoff = FileTime.from(Instant.now().minus(maxAge));
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path file : files) {
+				if (Files.getLastModifiedTime(file).compareTo(cutoff) < 0) {
+					deleteQuietly(file);
+				}
+			}
+		}
+		catch (IOException e) {
+			LOGGER.warnf(e, "Failed to sweep spool directory %s", directory);
+		}
+	}
+
+	private void spilled(long bytes) {
+		spilled.incrementAndGet();
+		spilledBytes.addAndGet(bytes);
+	}
+
+	private MessagePeek peek(byte[] data, int length) throws IOException {
+		try (JsonParser parser = mapper.getFactory().createParser(data, 0, length)) {
+			return MessagePeek.scan(parser);
+		}
+	}
+
+	private MessagePeek peek(Path file) throws IOException {
+		try (JsonParser parser = mapper.getFactory().createParser(file.toFile())) {
+			return MessagePeek.scan(parser);
+		}
+	}
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		}
+		catch (IOException ignored) {
+		}
+	}
+
+	public final class Sink extends OutputStream {
+		private byte[] buffer = new byte[Math.min(8192, Math.max(threshold, 16))];
+		private int count;
+		private Path file;
+		private FileChannel channel;
+		private long written;
+
+		private Sink() {
+		}
+
+		@Override
+		public void write(int value) throws IOException {
+			write(new byte[] { (byte) value }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			if (channel == null && count + length > threshold) {
+				spill();
+			}
+			if (channel != null) {
+				writeFully(ByteBuffer.wrap(data, offset, length));
+			}
+			else {
+				if (count + length > buffer.length) {
+					buffer = Arrays.copyOf(buffer, Math.min(threshold, Math.max(buffer.length * 2, count + length)));
+				}
+				System.arraycopy(data, offset, buffer, count, length);
+				count += length;
+			}
+			written += length;
+		}
+
+		void write(ByteBuffer data) throws IOException {
+			if (data.hasArray()) {
+				write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+				data.position(data.limit());
+				return;
+			}
+			byte[] copy = new byte[data.remaining()];
+			data.get(copy);
+			write(copy, 0, copy.length);
+		}
+
+		public SpooledResult finish() throws IOException {
+			if (channel == null) {
+				byte[] data = buffer;
+				buffer = null;
+				return SpooledResult.inMemory(data, count, count == 0 ? null : peek(data, count));
+			}
+			try {
+				channel.close();
+				spilled(written);
+				return SpooledResult.inFile(file, written, peek(file));
+			}
+			catch (IOException e) {
+				deleteQuietly(file);
+				throw e;
+			}
+		}
+
+		public void discard() {
+			buffer = null;
+			if (channel != null) {
+				try {
+					channel.close();
+				}
+				catch (IOException ignored) {
+				}
+				deleteQuietly(file);
+			}
+		}
+
+		private void spill() throws IOException {
+			file = createFile();
+			channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			writeFully(ByteBuffer.wrap(buffer, 0, count));
+			buffer = null;
+			count = 0;
+		}
+
+		private void writeFully(ByteBuffer data) throws IOException {
+			while (data.hasRemaining()) {
+				channel.write(data);
+			}
+		}
+	}
+
+	private static final class SinkSubscriber implements HttpResponse.BodySubscriber<SpooledResult> {
+		private final Sink sink;
+		private final CompletableFuture<SpooledResult> result = new CompletableFuture<>();
+		private Flow.Subscription subscription;
+
+		private SinkSubscriber(Sink sink) {
+			this.sink = sink;
+		}
+
+		@Override
+		public CompletionStage<SpooledResult> getBody() {
+			return result;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> items) {
+			try {
+				for (ByteBuffer item : items) {
+					sink.write(item);
+				}
+			}
+			catch (IOException e) {
+				subscription.cancel();
+				sink.discard();
+				result.completeExceptionally(new UncheckedIOException(e));
+				return;
+			}
+			subscription.request(1);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			sink.discard();
+			result.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			try {
+				result.complete(sink.finish());
+			}
+			catch (IOException e) {
+				result.completeExceptionally(new UncheckedIOException(e));
+			}
+		}
+	}
+}
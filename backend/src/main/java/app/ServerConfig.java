@@ -33,6 +33,16 @@ public class ServerConfig {
 	public String oauthScopes;
 	public JsonNode configSchema;
 	public JsonNode configuration;
+	public Long requestTimeoutMillis;
+	public Map<String, Long> methodTimeoutMillis = new HashMap<>();
+	public boolean adaptiveTimeouts;
+	public Double adaptiveTimeoutFactor;
+	public Integer poolMinInstances;
+	public Integer poolMaxInstances;
+	public Integer warmStandby;
+	public Long idleTimeoutMillis;
+	public Integer maxRestarts;
+	public Long restartWindowMillis;
 	public Map<String, String> env = new HashMap<>();
 	public Map<String, List<SavedInput>> savedInputs = new HashMap<>();
 
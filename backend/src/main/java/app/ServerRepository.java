@@ -1,5 +1,6 @@
 package app;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.jboss.logging.Logger;
@@ -13,8 +14,14 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @ApplicationScoped
 public class ServerRepository {
@@ -22,6 +29,14 @@ public class ServerRepository {
 	private final Path dataDir;
 	private final ObjectMapper mapper;
 	private final Map<String, ServerConfig> cache = new ConcurrentHashMap<>();
+	private final Set<String> pendingWrites = ConcurrentHashMap.newKeySet();
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(
+		task -> {
+			Thread thread = new Thread(task, "mcp-config-writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	);
 	private volatile boolean cacheLoaded = false;
 
 	@Inject
@@ -105,8 +120,63 @@ public class ServerRepository {
 		return config;
 	}
 
+	public ServerConfig saveAsync(ServerConfig config) {
+		if (config == null || config.id == null) {
+			throw new IllegalArgumentException("Missing server id");
+		}
+		String id = config.id;
+		cache.put(id, config);
+		if (pendingWrites.add(id)) {
+			writer.execute(
+				() -> {
+					pendingWrites.remove(id);
+					ServerConfig latest = cache.get(id);
+					if (latest == null) {
+						return;
+					}
+					try {
+						write(dataDir.resolve(id + ".json"), latest);
+					}
+					catch (RuntimeException e) {
+						LOGGER.errorf(e, "Failed to save server config %s", id);
+					}
+				}
+			);
+		}
+		return config;
+	}
+
+	@PreDestroy
+	void flushWrites() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	public ServerConfig rename(String oldId, String newId, ServerConfig config) {
 		loadAllIfNeeded();
+		// Runs on the writer thread so a queued saveAsync of the old id cannot recreate its file afterwards.
+		Future<ServerConfig> renamed = writer.submit(() -> renameFiles(oldId, newId, config));
+		try {
+			return renamed.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while renaming server config", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtime) {
+				throw runtime;
+			}
+			throw new IllegalStateException("Failed to rename server config", e.getCause());
+		}
+	}
+
+	private ServerConfig renameFiles(String oldId, String newId, ServerConfig config) {
 		ensureDir();
 		Path source = dataDir.resolve(oldId + ".json");
 		Path target = dataDir.resolve(newId + ".json");
@@ -1,11 +1,14 @@
 package app;
 import com.fasterxml.jackson.databind.JsonNode;
+import java.time.Duration;
+import java.util.Map;
 
 public class ServerSession {
 	public final ServerConfig config;
 	public final Process process;
 	public final McpClient client;
 	public final LogBroadcaster logStream;
+	public final RequestTimeouts timeouts;
 	public volatile boolean connected;
 	public volatile JsonNode capabilities;
 	public volatile JsonNode rawInitialize;
@@ -13,16 +16,36 @@ public class ServerSession {
 	public volatile JsonNode resources;
 	public volatile JsonNode prompts;
 	public volatile String mcpSessionId;
+	public volatile PooledMcpClient pool;
+	public volatile SupervisedMcpClient supervisor;
+	public volatile boolean prewarmed;
+	public volatile Map<String, Long> startPhases;
+	private volatile long lastUsedNanos = System.nanoTime();
 
-	public ServerSession(ServerConfig config, Process process, McpClient client, LogBroadcaster logStream) {
+	public ServerSession(ServerConfig config, Process process, McpClient client, LogBroadcaster logStream, RequestTimeouts timeouts) {
 		this.config = config;
 		this.process = process;
 		this.client = client;
 		this.logStream = logStream;
+		this.timeouts = timeouts;
 		this.connected = false;
 	}
 
+	public void touch() {
+		lastUsedNanos = System.nanoTime();
+	}
+
+	public Duration idleFor() {
+		return Duration.ofNanos(System.nanoTime() - lastUsedNanos);
+	}
+
 	public boolean isRunning() {
+		if (pool != null) {
+			return pool.size() > 0 && connected;
+		}
+		if (supervisor != null) {
+			return supervisor.isAvailable() && connected;
+		}
 		if (process == null) {
 			return connected;
 		}
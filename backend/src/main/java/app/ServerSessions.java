@@ -1,41 +1,132 @@
 package app;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.apache.commons.exec.CommandLine;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @ApplicationScoped
 public class ServerSessions {
+	private static final int CIRCUIT_WINDOW = 20;
+	private static final int CIRCUIT_MINIMUM_CALLS = 10;
+	private static final Duration IDLE_SWEEP_INTERVAL = Duration.ofSeconds(30);
+	private static final Duration RESTART_BACKOFF = Duration.ofMillis(500);
+	private static final Duration RESTART_BACKOFF_MAX = Duration.ofSeconds(10);
 	private final ServerRepository repository;
 	private final ObjectMapper mapper;
 	private final OAuthService oauth;
+	private final HttpClients httpClients;
+	private final ResponseSpool spool;
+	private final SessionThreads threads;
+	private final WireEvent.Verbosity logVerbosity;
+	private final boolean sseReplayIdempotent;
+	private final int maxConcurrent;
+	private final int maxQueued;
+	private final int circuitFailureRate;
+	private final Duration circuitOpenDuration;
+	private final Duration idleTimeout;
+	private final int maxRestarts;
+	private final Duration restartWindow;
+	private final Duration poolIdleTimeout;
+	private volatile DeadlineTimer.Timeout idleSweep;
+	private volatile boolean stopped;
 	private final Map<String, ServerSession> sessions = new ConcurrentHashMap<>();
 	private final Map<String, LogBroadcaster> logStreams = new ConcurrentHashMap<>();
 	private final Map<String, String> mcpSessionIds = new ConcurrentHashMap<>();
+	private final Map<String, HeaderSnapshot> headerSnapshots = new ConcurrentHashMap<>();
+	private StandbyPool standbys;
+	private final java.util.Set<String> evicted = ConcurrentHashMap.newKeySet();
+	private final Map<String, Object> startLocks = new ConcurrentHashMap<>();
 
 	@Inject
-	public ServerSessions(ServerRepository repository, ObjectMapper mapper, OAuthService oauth) {
+	public ServerSessions(
+		ServerRepository repository,
+		ObjectMapper mapper,
+		OAuthService oauth,
+		HttpClients httpClients,
+		ResponseSpool spool,
+		@ConfigProperty(name = "mcp.virtual-threads", defaultValue = "false") boolean virtualThreads,
+		@ConfigProperty(name = "mcp.log.verbosity", defaultValue = "payload") String logVerbosity,
+		@ConfigProperty(name = "mcp.sse.replay-idempotent", defaultValue = "true") boolean sseReplayIdempotent,
+		@ConfigProperty(name = "mcp.bulkhead.max-concurrent", defaultValue = "16") int maxConcurrent,
+		@ConfigProperty(name = "mcp.bulkhead.max-queued", defaultValue = "32") int maxQueued,
+		@ConfigProperty(name = "mcp.circuit.failure-rate", defaultValue = "50") int circuitFailureRate,
+		@ConfigProperty(name = "mcp.circuit.open-duration", defaultValue = "30s") Duration circuitOpenDuration,
+		@ConfigProperty(name = "mcp.session.idle-timeout", defaultValue = "0") Duration idleTimeout,
+		@ConfigProperty(name = "mcp.supervisor.max-restarts", defaultValue = "3") int maxRestarts,
+		@ConfigProperty(name = "mcp.supervisor.restart-window", defaultValue = "5m") Duration restartWindow,
+		@ConfigProperty(name = "mcp.pool.idle-timeout", defaultValue = "2m") Duration poolIdleTimeout) {
 		this.repository = repository;
 		this.mapper = mapper;
 		this.oauth = oauth;
+		this.httpClients = httpClients;
+		this.spool = spool;
+		this.threads = new SessionThreads(virtualThreads);
+		this.logVerbosity = WireEvent.Verbosity.parse(logVerbosity);
+		this.sseReplayIdempotent = sseReplayIdempotent;
+		this.maxConcurrent = maxConcurrent;
+		this.maxQueued = maxQueued;
+		this.circuitFailureRate = circuitFailureRate;
+		this.circuitOpenDuration = circuitOpenDuration;
+		this.idleTimeout = idleTimeout;
+		this.maxRestarts = maxRestarts;
+		this.restartWindow = restartWindow;
+		this.poolIdleTimeout = poolIdleTimeout;
+	}
+
+	@PostConstruct
+	void createStandbyPool() {
+		standbys = new StandbyPool(this::warmStandby, threads, (id, error) -> logStreamFor(id).publish(ts() + " warm standby failed: " + error));
+	}
+
+	void onStartup(@Observes StartupEvent event) {
+		oauth.onTokenChange(this::invalidateHeaders);
+		scheduleIdleSweep();
+		for (ServerConfig config : repository.list()) {
+			if (usesStandby(config)) {
+				standbys.replenish(config);
+			}
+		}
+	}
+
+	@PreDestroy
+	void shutdown() {
+		stopped = true;
+		DeadlineTimer.Timeout sweep = idleSweep;
+		if (sweep != null) {
+			sweep.cancel();
+		}
+		standbys.discardAll();
 	}
 
 	public ServerSession start(String serverId) {
-		return sessions.computeIfAbsent(
+		ServerSession started = sessions.computeIfAbsent(
 			serverId,
 			id -> {
 				ServerConfig config = repository.get(id).orElseThrow();
 				if ("sse".equalsIgnoreCase(config.transport) || "streamable".equalsIgnoreCase(config.transport)) {
 					LogBroadcaster logStream = logStreamFor(id);
-					McpClient client = createHttpClient(id, config, logStream);
-					ServerSession session = new ServerSession(config, null, client, logStream);
+					RequestTimeouts timeouts = RequestTimeouts.forConfig(config);
+					McpClient client = resilient(createHttpClient(id, config, logStream, timeouts), logStream, timeouts);
+					ServerSession session = new ServerSession(config, null, client, logStream, timeouts);
+					client.onNotification(notification -> handleNotification(session, notification));
 					String sessionId = mcpSessionIds.get(id);
 					if (sessionId != null && !sessionId.isBlank()) {
 						session.mcpSessionId = sessionId;
@@ -48,29 +139,21 @@ public class ServerSessions {
 						&& !"stdio".equalsIgnoreCase(config.transport)) {
 					throw new IllegalStateException("Unsupported transport: " + config.transport);
 				}
-				CommandLine commandLine = CommandLine.parse(config.command);
-				java.util.List<String> command = new java.util.ArrayList<>();
-				command.add(commandLine.getExecutable());
-				if (commandLine.getArguments() != null) {
-					for (String arg : commandLine.getArguments()) {
-						command.add(arg);
-					}
-				}
-				ProcessBuilder builder = new ProcessBuilder(command);
-				if (config.cwd != null && !config.cwd.isBlank()) {
-					builder.directory(java.nio.file.Path.of(config.cwd).toFile());
-				}
-				if (config.env != null && !config.env.isEmpty()) {
-					builder.environment().putAll(config.env);
-				}
+				LogBroadcaster logStream = logStreamFor(id);
+				RequestTimeouts timeouts = RequestTimeouts.forConfig(config);
 				try {
-					Process process = builder.start();
-					LogBroadcaster logStream = logStreamFor(id);
-					JsonRpcConnection.Framing framing = toFraming(config.framing);
-					McpClient client = new StdioMcpClient(mapper, process.getInputStream(), process.getOutputStream(), msg -> logStream.publish(ts() + " " + msg), framing);
-					ServerSession session = new ServerSession(config, process, client, logStream);
-					startStderrReader(process, logStream);
-					startExitWatcher(process, logStream, id);
+					if (poolMaxInstances(config) > 1) {
+						return startPool(id, config, logStream, timeouts);
+					}
+					if (usesStandby(config)) {
+						StandbyPool.Standby standby = standbys.take(id);
+						standbys.replenish(config);
+						if (standby != null) {
+							return adopt(id, config, logStream, standby);
+						}
+					}
+					PooledMcpClient.Member instance = spawnStdio(config, logStream, timeouts);
+					ServerSession session = singleSession(id, config, logStream, timeouts, instance);
 					logStream.publish(ts() + " started server " + config.command);
 					return session;
 				}
@@ -79,6 +162,8 @@ public class ServerSessions {
 				}
 			}
 		);
+		evicted.remove(serverId);
+		return started;
 	}
 
 	public ServerSession get(String serverId) {
@@ -90,10 +175,36 @@ public class ServerSessions {
 		return session != null && session.isRunning();
 	}
 
+	public void invalidateHeaders(String serverId) {
+		HeaderSnapshot snapshot = headerSnapshots.get(serverId);
+		if (snapshot != null) {
+			snapshot.invalidate();
+		}
+	}
+
+	public void configChanged(String serverId) {
+		invalidateHeaders(serverId);
+		standbys.discard(serverId);
+		repository.get(serverId)
+			.filter(ServerSessions::usesStandby)
+			.ifPresent(standbys::replenish);
+	}
+
+	public boolean wasEvicted(String serverId) {
+		return evicted.contains(serverId);
+	}
+
+	public Object startLock(String serverId) {
+		return startLocks.computeIfAbsent(serverId, id -> new Object());
+	}
+
 	public void stop(String serverId) {
+		evicted.remove(serverId);
+		headerSnapshots.remove(serverId);
 		ServerSession session = sessions.remove(serverId);
 		if (session != null) {
 			session.logStream.publish(ts() + " stopping server");
+			session.client.close();
 			if (session.process != null) {
 				session.process.destroy();
 			}
@@ -101,44 +212,358 @@ public class ServerSessions {
 	}
 
 	public LogBroadcaster logStreamFor(String serverId) {
-		return logStreams.computeIfAbsent(serverId, id -> new LogBroadcaster());
+		return logStreams.computeIfAbsent(serverId, id -> new LogBroadcaster(logVerbosity));
+	}
+
+	private ServerSession startPool(String serverId, ServerConfig config, LogBroadcaster logStream, RequestTimeouts timeouts) throws IOException {
+		int minInstances = poolMinInstances(config);
+		int maxInstances = poolMaxInstances(config);
+		java.util.List<PooledMcpClient.Member> instances = new java.util.ArrayList<>();
+		try {
+			for (int i = 0; i < minInstances; i++) {
+				instances.add(spawnStdio(config, logStream, timeouts));
+			}
+		}
+		catch (IOException e) {
+			instances.forEach(instance -> instance.process.destroy());
+			throw e;
+		}
+		PooledMcpClient pool = new PooledMcpClient(
+			instances,
+			() -> respawn(config, logStream, timeouts),
+			maxInstances,
+			poolIdleTimeout,
+			threads,
+			msg -> logStream.publish(ts() + " " + msg));
+		McpClient client = resilient(pool, logStream, timeouts);
+		ServerSession session = new ServerSession(config, null, client, logStream, timeouts);
+		session.pool = pool;
+		client.onNotification(notification -> handleNotification(session, notification));
+		pool.drained().thenRun(() -> sessions.remove(serverId, session));
+		logStream.publish(ts() + " started pool of " + minInstances + " (max " + maxInstances + ") " + config.command);
+		return session;
+	}
+
+	private ServerSession singleSession(
+		String serverId,
+		ServerConfig config,
+		LogBroadcaster logStream,
+		RequestTimeouts timeouts,
+		PooledMcpClient.Member instance) {
+		int restarts = config.maxRestarts == null ? maxRestarts : Math.max(0, config.maxRestarts);
+		SupervisedMcpClient supervisor = null;
+		if (restarts > 0) {
+			Duration window = config.restartWindowMillis == null ? restartWindow : Duration.ofMillis(config.restartWindowMillis);
+			supervisor = new SupervisedMcpClient(
+				instance,
+				config.configuration,
+				() -> respawn(config, logStream, timeouts),
+				restarts,
+				window,
+				new Backoff(RESTART_BACKOFF, RESTART_BACKOFF_MAX),
+				threads,
+				msg -> logStream.publish(ts() + " " + msg));
+		}
+		McpClient client = resilient(supervisor != null ? supervisor : instance.client, logStream, timeouts);
+		ServerSession session = new ServerSession(config, instance.process, client, logStream, timeouts);
+		session.supervisor = supervisor;
+		client.onNotification(notification -> handleNotification(session, notification));
+		if (supervisor != null) {
+			supervisor.gaveUp().thenRun(() -> sessions.remove(serverId, session));
+		}
+		else {
+			startExitWatcher(instance.process, logStream, serverId, session);
+		}
+		return session;
+	}
+
+	private ServerSession adopt(String serverId, ServerConfig config, LogBroadcaster logStream, StandbyPool.Standby standby) {
+		ServerSession session = singleSession(serverId, config, logStream, standby.timeouts, standby.instance);
+		session.rawInitialize = standby.initialize;
+		session.capabilities = standby.initialize;
+		session.tools = standby.tools;
+		session.resources = standby.resources;
+		session.prompts = standby.prompts;
+		session.connected = true;
+		session.prewarmed = true;
+		logStream.publish(ts() + " started server " + config.command + " from warm standby");
+		return session;
+	}
+
+	private StandbyPool.Standby warmStandby(ServerConfig config) {
+		LogBroadcaster logStream = logStreamFor(config.id);
+		RequestTimeouts timeouts = RequestTimeouts.forConfig(config);
+		PooledMcpClient.Member instance;
+		try {
+			instance = spawnStdio(config, logStream, timeouts);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		try {
+			JsonNode initialize = instance.client
+				.initialize(config.configuration)
+				.get(timeouts.limitFor("initialize").toMillis(), TimeUnit.MILLISECONDS);
+			StandbyPool.Standby standby = new StandbyPool.Standby(
+				instance,
+				timeouts,
+				initialize,
+				listQuietly(instance.client::listTools, timeouts, "tools/list"),
+				listQuietly(instance.client::listResources, timeouts, "resources/list"),
+				listQuietly(instance.client::listPrompts, timeouts, "prompts/list"));
+			instance.client.onNotification(
+				notification -> {
+					if (notification.path("method").asText("").endsWith("/list_changed")) {
+						standby.markStale();
+					}
+				}
+			);
+			logStream.publish(ts() + " warm standby ready, pid " + instance.process.pid());
+			return standby;
+		}
+		catch (Exception e) {
+			instance.client.close();
+			instance.process.destroy();
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	private static JsonNode listQuietly(
+		java.util.function.Supplier<java.util.concurrent.CompletableFuture<JsonNode>> list,
+		RequestTimeouts timeouts,
+		String method) {
+		try {
+			return list.get().get(timeouts.limitFor(method).toMillis(), TimeUnit.MILLISECONDS);
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static boolean usesStandby(ServerConfig config) {
+		boolean stdio = config.transport == null || config.transport.isBlank() || "stdio".equalsIgnoreCase(config.transport);
+		return stdio && StandbyPool.target(config) > 0 && poolMaxInstances(config) <= 1;
+	}
+
+	private PooledMcpClient.Member respawn(ServerConfig config, LogBroadcaster logStream, RequestTimeouts timeouts) {
+		try {
+			return spawnStdio(config, logStream, timeouts);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private PooledMcpClient.Member spawnStdio(ServerConfig config, LogBroadcaster logStream, RequestTimeouts timeouts) throws IOException {
+		CommandLine commandLine = CommandLine.parse(config.command);
+		java.util.List<String> command = new java.util.ArrayList<>();
+		command.add(commandLine.getExecutable());
+		if (commandLine.getArguments() != null) {
+			for (String arg : commandLine.getArguments()) {
+				command.add(arg);
+			}
+		}
+		ProcessBuilder builder = new ProcessBuilder(command);
+		if (config.cwd != null && !config.cwd.isBlank()) {
+			builder.directory(java.nio.file.Path.of(config.cwd).toFile());
+		}
+		if (config.env != null && !config.env.isEmpty()) {
+			builder.environment().putAll(config.env);
+		}
+		Process process = builder.start();
+		JsonRpcConnection.Framing framing = toFraming(config.framing);
+		StdioMcpClient client = new StdioMcpClient(mapper, process.getInputStream(), process.getOutputStream(), msg -> logStream.publish(ts() + " " + msg), logStream::publish, framing, threads, timeouts, spool);
+		startStderrReader(process, logStream);
+		return new PooledMcpClient.Member(client, process);
+	}
+
+	private static int poolMinInstances(ServerConfig config) {
+		return config.poolMinInstances == null ? 1 : Math.max(1, config.poolMinInstances);
+	}
+
+	private static int poolMaxInstances(ServerConfig config) {
+		int min = poolMinInstances(config);
+		return config.poolMaxInstances == null ? min : Math.max(min, config.poolMaxInstances);
+	}
+
+	private void scheduleIdleSweep() {
+		if (stopped) {
+			return;
+		}
+		idleSweep = DeadlineTimer.shared().schedule(IDLE_SWEEP_INTERVAL, () -> threads.start("mcp-idle-sweep", () -> {
+			try {
+				evictIdle();
+			}
+			finally {
+				scheduleIdleSweep();
+			}
+		}));
+	}
+
+	private void evictIdle() {
+		sessions.forEach(
+			(id, session) -> {
+				Duration timeout = idleTimeoutFor(session.config);
+				if (timeout.isZero() || session.idleFor().compareTo(timeout) < 0) {
+					return;
+				}
+				if (session.client instanceof ResilientMcpClient resilient && resilient.inFlight() > 0) {
+					return;
+				}
+				if (!sessions.remove(id, session)) {
+					return;
+				}
+				evicted.add(id);
+				headerSnapshots.remove(id);
+				mcpSessionIds.remove(id);
+				session.logStream.publish(ts() + " stopping server idle for " + session.idleFor().toSeconds() + " s");
+				threads.start("mcp-idle-stop", () -> {
+					session.client.close();
+					if (session.process != null) {
+						session.process.destroy();
+					}
+				});
+			}
+		);
+	}
+
+	private Duration idleTimeoutFor(ServerConfig config) {
+		if (config.idleTimeoutMillis != null) {
+			return Duration.ofMillis(Math.max(0, config.idleTimeoutMillis));
+		}
+		return idleTimeout;
 	}
 
 	private void startStderrReader(Process process, LogBroadcaster logStream) {
-		Thread stderr = new Thread(() -> {
-      try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
-        String line;
-        while ((line = reader.readLine()) != null) {
-          logStream.publish(ts() + " [stderr] " + line);
-        }
-      } catch (IOException ignored) {
-      }
-    }, "mcp-stderr-reader");
-		stderr.setDaemon(true);
-		stderr.start();
-	}
-
-	private void startExitWatcher(Process process, LogBroadcaster logStream, String serverId) {
-		Thread watcher = new Thread(() -> {
-      try {
-        int code = process.waitFor();
-        logStream.publish(ts() + " process exited with code " + code);
-      } catch (InterruptedException ignored) {
-        Thread.currentThread().interrupt();
-      } finally {
-        sessions.remove(serverId);
-      }
-    }, "mcp-exit-watcher");
-		watcher.setDaemon(true);
-		watcher.start();
+		threads.start("mcp-stderr-reader", () -> {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					logStream.publish(ts() + " [stderr] " + line);
+				}
+			}
+			catch (IOException ignored) {
+			}
+		});
+	}
+
+	private void startExitWatcher(Process process, LogBroadcaster logStream, String serverId, ServerSession session) {
+		process.onExit()
+			.whenComplete(
+				(exited, error) -> {
+					if (error == null) {
+						logStream.publish(ts() + " process exited with code " + exited.exitValue());
+					}
+					// Only this process's session: the server may have been restarted under the same id meanwhile.
+					sessions.remove(serverId, session);
+				}
+			);
+	}
+
+	private void handleNotification(ServerSession session, JsonNode notification) {
+		String method = notification.path("method").asText("");
+		switch (method) {
+			case "notifications/tools/list_changed" -> refreshFacet(
+				session,
+				"tools",
+				"name",
+				session.client::listTools,
+				() -> session.tools,
+				value -> session.tools = value);
+			case "notifications/resources/list_changed" -> refreshFacet(
+				session,
+				"resources",
+				"uri",
+				session.client::listResources,
+				() -> session.resources,
+				value -> session.resources = value);
+			case "notifications/prompts/list_changed" -> refreshFacet(
+				session,
+				"prompts",
+				"name",
+				session.client::listPrompts,
+				() -> session.prompts,
+				value -> session.prompts = value);
+			default -> session.logStream.publish(ts() + " notification " + notification);
+		}
+	}
+
+	private void refreshFacet(
+		ServerSession session,
+		String facet,
+		String key,
+		java.util.function.Supplier<java.util.concurrent.CompletableFuture<JsonNode>> list,
+		java.util.function.Supplier<JsonNode> current,
+		java.util.function.Consumer<JsonNode> update) {
+		list.get()
+			.whenComplete(
+				(result, error) -> {
+					if (error != null) {
+						session.logStream.publish(ts() + " facets refresh failed " + facet + ": " + error.getMessage());
+						return;
+					}
+					ObjectNode delta = facetDelta(facet, key, current.get(), result);
+					update.accept(result);
+					session.logStream.publish(ts() + " facets changed " + facet + " " + delta);
+				}
+			);
+	}
+
+	private ObjectNode facetDelta(String facet, String key, JsonNode previous, JsonNode next) {
+		Map<String, JsonNode> before = indexFacet(facet, key, previous);
+		Map<String, JsonNode> after = indexFacet(facet, key, next);
+		ObjectNode delta = mapper.createObjectNode();
+		ArrayNode added = delta.putArray("added");
+		ArrayNode removed = delta.putArray("removed");
+		ArrayNode updated = delta.putArray("updated");
+		after.forEach(
+			(name, entry) -> {
+				JsonNode old = before.get(name);
+				if (old == null) {
+					added.add(entry);
+				}
+				else if (!old.equals(entry)) {
+					updated.add(entry);
+				}
+			}
+		);
+		before.keySet()
+			.stream()
+			.filter(name -> !after.containsKey(name))
+			.forEach(removed::add);
+		return delta;
+	}
+
+	private static Map<String, JsonNode> indexFacet(String facet, String key, JsonNode list) {
+		Map<String, JsonNode> index = new java.util.LinkedHashMap<>();
+		if (list == null || list.isNull()) {
+			return index;
+		}
+		JsonNode entries = list.has(facet) ? list.get(facet) : list;
+		if (!entries.isArray()) {
+			return index;
+		}
+		for (JsonNode entry : entries) {
+			String name = entry.path(key).asText(null);
+			if (name != null) {
+				index.put(name, entry);
+			}
+		}
+		return index;
 	}
 
 	private static String ts() {
 		return Instant.now().toString();
 	}
 
-	private McpClient createHttpClient(String serverId, ServerConfig config, LogBroadcaster logStream) {
-		java.util.function.Supplier<Map<String, String>> headerSupplier = () -> buildHeaders(serverId, config);
+	private McpClient resilient(McpClient client, LogBroadcaster logStream, RequestTimeouts timeouts) {
+		CircuitBreaker breaker = new CircuitBreaker(CIRCUIT_WINDOW, CIRCUIT_MINIMUM_CALLS, circuitFailureRate, circuitOpenDuration);
+		return new ResilientMcpClient(client, breaker, timeouts, msg -> logStream.publish(ts() + " " + msg), maxConcurrent, maxQueued);
+	}
+
+	private McpClient createHttpClient(String serverId, ServerConfig config, LogBroadcaster logStream, RequestTimeouts timeouts) {
+		HeaderSnapshot headerSupplier = new HeaderSnapshot(() -> buildHeaders(serverId, config), () -> oauth.tokenRefreshAt(serverId));
+		headerSnapshots.put(serverId, headerSupplier);
 		java.util.function.Consumer<String> unauthorizedHandler = header -> {
 			String headersDump;
 			if (header == null || header.isBlank()) {
@@ -156,7 +581,10 @@ public class ServerSessions {
 			if (value == null || value.isBlank()) {
 				return;
 			}
-			mcpSessionIds.put(serverId, value);
+			if (value.equals(mcpSessionIds.put(serverId, value))) {
+				return;
+			}
+			headerSupplier.invalidate();
 			ServerSession session = sessions.get(serverId);
 			if (session != null) {
 				session.mcpSessionId = value;
@@ -167,22 +595,31 @@ public class ServerSessions {
 		if ("sse".equalsIgnoreCase(config.transport)) {
 			return new SseMcpClient(
 				mapper,
+				httpClients,
 				config.httpUrl,
 				config.httpMessageUrl,
 				headerSupplier,
 				msg -> logStream.publish(ts() + " " + msg),
+				logStream::publish,
 				unauthorizedHandler,
 				headersSink,
-				sessionIdSink);
+				sessionIdSink,
+				timeouts,
+				sseReplayIdempotent,
+				spool);
 		}
 		return new StreamableHttpMcpClient(
 			mapper,
+			httpClients,
 			config.httpUrl,
 			headerSupplier,
 			msg -> logStream.publish(ts() + " " + msg),
+			logStream::publish,
 			unauthorizedHandler,
 			headersSink,
-			sessionIdSink);
+			sessionIdSink,
+			timeouts,
+			spool);
 	}
 
 	private Map<String, String> buildHeaders(String serverId, ServerConfig config) {
@@ -0,0 +1,25 @@
+package app;
+
+public class SessionThreads {
+	private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+	private final boolean virtual;
+
+	public SessionThreads(boolean virtual) {
+		this.virtual = virtual;
+	}
+
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	public Thread start(String name, Runnable task) {
+		if (virtual) {
+			return Thread.ofVirtual().name(name).start(task);
+		}
+		return Thread.ofPlatform()
+			.name(name)
+			.daemon(true)
+			.stackSize(PLATFORM_STACK_SIZE)
+			.start(task);
+	}
+}
@@ -0,0 +1,142 @@
+package app;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class SpooledResult {
+	public final Path file;
+	public final long offset;
+	public final long length;
+	public final long messageLength;
+	public final boolean error;
+	private final byte[] data;
+	private final MessagePeek peek;
+
+	private SpooledResult(Path file, byte[] data, long messageLength, MessagePeek peek) {
+		this.file = file;
+		this.data = data;
+		this.peek = peek;
+		this.messageLength = messageLength;
+		this.error = peek != null && peek.hasError;
+		if (peek != null && peek.hasResultRange()) {
+			this.offset = peek.resultOffset;
+			this.length = peek.resultLength;
+		}
+		else {
+			this.offset = 0;
+			this.length = messageLength;
+		}
+	}
+
+	static SpooledResult inMemory(byte[] data, int length, MessagePeek peek) {
+		return new SpooledResult(null, data, length, peek);
+	}
+
+	static SpooledResult inFile(Path file, long length, MessagePeek peek) {
+		return new SpooledResult(file, null, length, peek);
+	}
+
+	MessagePeek peek() {
+		return peek;
+	}
+
+	public boolean isInMemory() {
+		return file == null;
+	}
+
+	public JsonNode readMessage(ObjectMapper mapper) throws IOException {
+		if (data != null) {
+			return mapper.readTree(data, 0, (int) messageLength);
+		}
+		return mapper.readTree(file.toFile());
+	}
+
+	public InputStream open() throws IOException {
+		if (data != null) {
+			return new ByteArrayInputStream(data, (int) offset, (int) length);
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		channel.position(offset);
+		InputStream input = Channels.newInputStream(channel);
+		return new InputStream() {
+			private long remaining = length;
+
+			@Override
+			public int read() throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int value = input.read();
+				if (value >= 0) {
+					remaining--;
+				}
+				return value;
+			}
+
+			@Override
+			public int read(byte[] buffer, int off, int len) throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int read = input.read(buffer, off, (int) Math.min(len, remaining));
+				if (read > 0) {
+					remaining -= read;
+				}
+				return read;
+			}
+
+			@Override
+			public void close() throws IOException {
+				input.close();
+			}
+		};
+	}
+
+	public void transferTo(OutputStream output) throws IOException {
+		transferRange(offset, length, output);
+	}
+
+	public void transferMessageTo(OutputStream output) throws IOException {
+		transferRange(0, messageLength, output);
+	}
+
+	public void delete() {
+		if (file == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(file);
+		}
+		catch (IOException ignored) {
+		}
+	}
+
+	private void transferRange(long start, long count, OutputStream output) throws IOException {
+		if (data != null) {
+			output.write(data, (int) start, (int) count);
+			output.flush();
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long position = start;
+			long end = start + count;
+			var target = Channels.newChannel(output);
+			while (position < end) {
+				long written = channel.transferTo(position, end - position, target);
+				if (written <= 0) {
+					break;
+				}
+				position += written;
+			}
+		}
+		output.flush();
+	}
+}
@@ -0,0 +1,243 @@
+package app;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class SseDecoder {
+	private static final int CHUNK_SIZE = 8192;
+	private static final byte[] DATA = "data".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] EVENT = "event".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ID = "id".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] RETRY = "retry".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+	private final Event event = new Event();
+	private byte[] line = new byte[256];
+	private int lineLength;
+	private boolean skipLineFeed;
+	private int bomMatched;
+	private boolean stopped;
+
+	public interface Handler {
+		// The event and its data buffer are reused; copy anything kept beyond the call.
+		boolean onEvent(Event event) throws Exception;
+	}
+
+	public String lastEventId() {
+		return event.id;
+	}
+
+	public long retryMillis() {
+		return event.retry;
+	}
+
+	public boolean decode(InputStream input, Handler handler) throws Exception {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int read;
+		while ((read = input.read(chunk)) >= 0) {
+			if (feed(chunk, 0, read, handler)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean feed(byte[] chunk, int offset, int length, Handler handler) throws Exception {
+		int end = offset + length;
+		int start = offset;
+		// The byte order mark may arrive split over several chunks.
+		while (bomMatched < BOM.length && start < end && chunk[start] == BOM[bomMatched]) {
+			bomMatched++;
+			start++;
+		}
+		if (bomMatched < BOM.length && start < end) {
+			append(BOM, 0, bomMatched);
+			bomMatched = BOM.length;
+		}
+		for (int i = start; i < end; i++) {
+			byte value = chunk[i];
+			if (value != '\n' && value != '\r') {
+				continue;
+			}
+			if (value == '\n' && skipLineFeed && i == start && lineLength == 0) {
+				skipLineFeed = false;
+				start = i + 1;
+				continue;
+			}
+			skipLineFeed = value == '\r';
+			if (lineLength > 0) {
+				append(chunk, start, i - start);
+				processLine(line, 0, lineLength, handler);
+				lineLength = 0;
+			}
+			else {
+				processLine(chunk, start, i - start, handler);
+			}
+			if (value == '\r' && i + 1 < end && chunk[i + 1] == '\n') {
+				i++;
+				skipLineFeed = false;
+			}
+			start = i + 1;
+			if (stopped) {
+				return true;
+			}
+		}
+		if (start < end) {
+			skipLineFeed = false;
+			append(chunk, start, end - start);
+		}
+		return false;
+	}
+
+	private void processLine(byte[] buffer, int offset, int length, Handler handler) throws Exception {
+		if (length == 0) {
+			dispatch(handler);
+			return;
+		}
+		if (buffer[offset] == ':') {
+			return;
+		}
+		int end = offset + length;
+		int colon = offset;
+		while (colon < end && buffer[colon] != ':') {
+			colon++;
+		}
+		int valueStart = colon < end ? colon + 1 : end;
+		if (valueStart < end && buffer[valueStart] == ' ') {
+			valueStart++;
+		}
+		int fieldLength = colon - offset;
+		if (matches(buffer, offset, fieldLength, DATA)) {
+			event.appendData(buffer, valueStart, end - valueStart);
+		}
+		else if (matches(buffer, offset, fieldLength, EVENT)) {
+			event.type = new String(buffer, valueStart, end - valueStart, StandardCharsets.UTF_8);
+		}
+		else if (matches(buffer, offset, fieldLength, ID)) {
+			if (indexOfNul(buffer, valueStart, end) < 0) {
+				event.id = new String(buffer, valueStart, end - valueStart, StandardCharsets.UTF_8);
+			}
+		}
+		else if (matches(buffer, offset, fieldLength, RETRY)) {
+			long retry = parseDigits(buffer, valueStart, end);
+			if (retry >= 0) {
+				event.retry = retry;
+			}
+		}
+	}
+
+	private void dispatch(Handler handler) throws Exception {
+		if (event.dataLength == 0 && !event.hasData) {
+			event.type = null;
+			return;
+		}
+		if (event.dataLength > 0) {
+			event.dataLength--;
+		}
+		try {
+			stopped = handler.onEvent(event);
+		}
+		finally {
+			event.type = null;
+			event.dataLength = 0;
+			event.hasData = false;
+		}
+	}
+
+	private void append(byte[] source, int offset, int length) {
+		if (lineLength + length > line.length) {
+			line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+		}
+		System.arraycopy(source, offset, line, lineLength, length);
+		lineLength += length;
+	}
+
+	private static boolean matches(byte[] buffer, int offset, int length, byte[] name) {
+		if (length != name.length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer[offset + i] != name[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOfNul(byte[] buffer, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer[i] == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static long parseDigits(byte[] buffer, int from, int to) {
+		if (from >= to) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = from; i < to; i++) {
+			byte digit = buffer[i];
+			if (digit < '0' || digit > '9') {
+				return -1;
+			}
+			value = value * 10 + (digit - '0');
+		}
+		return value;
+	}
+
+	public static final class Event {
+		private String type;
+		private String id;
+		private long retry = -1;
+		private byte[] data = new byte[1024];
+		private int dataLength;
+		private boolean hasData;
+
+		public String type() {
+			return type == null ? "message" : type;
+		}
+
+		public String id() {
+			return id;
+		}
+
+		public long retry() {
+			return retry;
+		}
+
+		public byte[] data() {
+			return data;
+		}
+
+		public int dataLength() {
+			return dataLength;
+		}
+
+		public String dataString() {
+			return new String(data, 0, dataLength, StandardCharsets.UTF_8);
+		}
+
+		public boolean isBlank() {
+			for (int i = 0; i < dataLength; i++) {
+				if ((data[i] & 0xFF) > ' ') {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void appendData(byte[] source, int offset, int length) {
+			int required = dataLength + length + 1;
+			if (required > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, required));
+			}
+			System.arraycopy(source, offset, data, dataLength, length);
+			dataLength += length;
+			data[dataLength++] = '\n';
+			hasData = true;
+		}
+	}
+}
@@ -1,65 +1,100 @@
 package app;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
-import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.function.Supplier;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import org.jboss.logging.Logger;
 
 public class SseMcpClient implements McpClient {
 	private static final Logger LOGGER = Logger.getLogger(SseMcpClient.class);
-	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
-	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+	private static final Duration STREAM_RETRY = Duration.ofSeconds(1);
+	private static final Duration STREAM_RETRY_MAX = Duration.ofSeconds(30);
+	private static final int MAX_RECONNECTS = 10;
+	private static final Duration SESSION_ID_GRACE = Duration.ofMillis(1500);
 	private final ObjectMapper mapper;
-	private final HttpClient client;
+	private final HttpClients clients;
 	private final URI sseEndpoint;
 	private final Supplier<Map<String, String>> headers;
 	private final Consumer<String> logSink;
+	private final Consumer<WireEvent> wireSink;
 	private final Consumer<String> unauthorizedHandler;
 	private final Consumer<String> authHeadersSink;
 	private final Consumer<String> sessionIdSink;
-	private volatile String lastSessionId;
-	private final CompletableFuture<Void> sseReady = new CompletableFuture<>();
-	private final AtomicInteger nextId = new AtomicInteger(1);
-	private final ConcurrentHashMap<Integer, CompletableFuture<JsonNode>> pending = new ConcurrentHashMap<>();
+	private final boolean replayIdempotent;
+	private final ResponseSpool spool;
+	private final RequestTimeouts timeouts;
+	private final PendingRequests pending;
+	private final CompletableFuture<String> sessionId = new CompletableFuture<>();
+	private volatile CompletableFuture<Void> sseReady = new CompletableFuture<>();
+	private final AtomicLong nextId = new AtomicLong(1);
+	private volatile boolean batchUnsupported;
+	private volatile boolean batchesAnswered;
+	private volatile Consumer<JsonNode> notificationHandler;
 	private final AtomicBoolean streamStarted = new AtomicBoolean(false);
-	private final CompletableFuture<URI> messageEndpoint = new CompletableFuture<>();
+	private final Backoff streamBackoff = new Backoff(STREAM_RETRY, STREAM_RETRY_MAX);
+	private final Map<Long, Replay> replays = new ConcurrentHashMap<>();
+	private final Queue<Long> replayQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicLong streamReconnects = new AtomicLong();
+	private final AtomicLong replayedRequests = new AtomicLong();
+	private volatile CompletableFuture<HttpResponse<Boolean>> stream;
+	private volatile CompletableFuture<URI> messageEndpoint = new CompletableFuture<>();
+	private volatile String lastEventId;
+	private volatile boolean closed;
+	private final boolean endpointConfigured;
 	private final URI fallbackEndpoint;
 
 	public SseMcpClient(
 		ObjectMapper mapper,
+		HttpClients clients,
 		String sseUrl,
 		String messageUrl,
 		Supplier<Map<String, String>> headers,
 		Consumer<String> logSink,
+		Consumer<WireEvent> wireSink,
 		Consumer<String> unauthorizedHandler,
 		Consumer<String> authHeadersSink,
-		Consumer<String> sessionIdSink) {
+		Consumer<String> sessionIdSink,
+		RequestTimeouts timeouts,
+		boolean replayIdempotent,
+		ResponseSpool spool) {
 		this.mapper = mapper;
-		this.client = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+		this.clients = clients;
 		this.sseEndpoint = URI.create(sseUrl);
 		this.headers = headers;
 		this.logSink = logSink;
+		this.wireSink = wireSink;
 		this.unauthorizedHandler = unauthorizedHandler;
 		this.authHeadersSink = authHeadersSink;
 		this.sessionIdSink = sessionIdSink;
+		this.replayIdempotent = replayIdempotent;
+		this.spool = spool;
+		this.timeouts = timeouts;
+		this.pending = new PendingRequests(
+			entry -> log("!! request " + entry.id + formatMethodSuffix(entry.method) + " timed out after " + entry.timeout.toMillis() + " ms"),
+			timeouts);
 		this.fallbackEndpoint = deriveMessageEndpoint(sseUrl, messageUrl);
-		if (messageUrl != null && !messageUrl.isBlank()) {
+		this.endpointConfigured = messageUrl != null && !messageUrl.isBlank();
+		if (endpointConfigured) {
 			messageEndpoint.complete(URI.create(messageUrl));
 			log("configured message endpoint " + messageUrl);
 		}
@@ -81,15 +116,16 @@ public class SseMcpClient implements McpClient {
 		clientInfo.put("name", "mcp-tester");
 		clientInfo.put("version", "0.1.0");
 		return request("initialize", params)
-			.thenApply(result -> {
-				if (waitForSessionId()) {
-					notify("initialized", null);
-				}
-				else {
-					log("initialized notification skipped (no mcp-session-id)");
-				}
-				return result;
-			});
+			.thenCompose(result -> awaitSessionId()
+				.thenApply(present -> {
+					if (present) {
+						notify("initialized", null);
+					}
+					else {
+						log("initialized notification skipped (no mcp-session-id)");
+					}
+					return result;
+				}));
 	}
 
 	@Override
@@ -120,6 +156,21 @@ public class SseMcpClient implements McpClient {
 		return requestRaw("tools/call", params);
 	}
 
+	@Override
+	public CompletableFuture<SpooledResult> callToolStreaming(String name, JsonNode arguments, JsonNode meta) {
+		return callTool(name, arguments, meta)
+			.thenApply(
+				message -> {
+					try {
+						return spool.spool(message);
+					}
+					catch (Exception e) {
+						throw new IllegalStateException("Failed to spool response", e);
+					}
+				}
+			);
+	}
+
 	@Override
 	public CompletableFuture<JsonNode> readResource(String uri) {
 		ObjectNode params = mapper.createObjectNode();
@@ -137,8 +188,45 @@ public class SseMcpClient implements McpClient {
 		return request("prompts/get", params);
 	}
 
+	@Override
+	public CompletableFuture<List<JsonNode>> batch(List<BatchCall> calls) {
+		if (batchUnsupported) {
+			return BatchCall.sequential(calls, call -> requestRaw(call.method, call.params));
+		}
+		return BatchCall.withFallback(
+			calls,
+			sendBatch(calls),
+			() -> batchUnsupported = true,
+			call -> requestRaw(call.method, call.params));
+	}
+
+	@Override
+	public void onNotification(Consumer<JsonNode> handler) {
+		this.notificationHandler = handler;
+	}
+
+	@Override
+	public Map<String, Long> metrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>(clients.metrics(sseEndpoint));
+		metrics.put("timedOutRequests", pending.timedOutRequests());
+		metrics.put("streamReconnects", streamReconnects.get());
+		metrics.put("replayedRequests", replayedRequests.get());
+		metrics.putAll(timeouts.metrics());
+		return metrics;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		CompletableFuture<HttpResponse<Boolean>> current = stream;
+		if (current != null) {
+			current.cancel(true);
+		}
+		failAll(new IllegalStateException("Client closed"));
+	}
+
 	private CompletableFuture<JsonNode> request(String method, JsonNode params) {
-		int id = nextId.getAndIncrement();
+		long id = nextId.getAndIncrement();
 		ObjectNode payload = mapper.createObjectNode();
 		payload.put("jsonrpc", "2.0");
 		payload.put("id", id);
@@ -161,7 +249,7 @@ public class SseMcpClient implements McpClient {
 	}
 
 	private CompletableFuture<JsonNode> requestRaw(String method, JsonNode params) {
-		int id = nextId.getAndIncrement();
+		long id = nextId.getAndIncrement();
 		ObjectNode payload = mapper.createObjectNode();
 		payload.put("jsonrpc", "2.0");
 		payload.put("id", id);
@@ -184,232 +272,392 @@ public class SseMcpClient implements McpClient {
 
 	private CompletableFuture<JsonNode> send(ObjectNode payload) {
 		String method = payload.has("method") ? payload.get("method").asText("") : "";
-		Integer id = payload.has("id") ? payload.get("id").asInt() : null;
-		CompletableFuture<JsonNode> response = new CompletableFuture<>();
-		if (id != null) {
-			pending.put(id, response);
-		}
+		Long id = payload.has("id") ? payload.get("id").asLong() : null;
+		CompletableFuture<JsonNode> response = id == null
+			? CompletableFuture.completedFuture(null)
+			: pending.register(id, method, PendingRequests.Mode.RAW);
+		List<Long> awaiting = id == null ? List.of() : List.of(id);
+		Replay replay = null;
+		if (id != null && replayIdempotent && McpClient.isIdempotent(method)) {
+			replay = new Replay(payload, method);
+			replays.put(id, replay);
+			response.whenComplete((reply, error) -> replays.remove(id));
+		}
+		Replay tracked = replay;
 		try {
 			ensureStream();
 			return maybeWaitForSseReady(payload)
 				.thenCompose(ignored -> resolveEndpoint())
-				.thenCompose(endpoint -> postMessage(endpoint, payload, id, response));
+				.thenCompose(
+					endpoint -> {
+						if (id != null && pending.get(id) == null) {
+							// Failed by a stream drop while waiting for the endpoint; posting would run it anyway.
+							return CompletableFuture.completedFuture(null);
+						}
+						if (tracked != null) {
+							tracked.posted = true;
+						}
+						return postMessage(endpoint, payload, method, awaiting, false);
+					}
+				)
+				.thenCompose(ignored -> response);
 		}
 		catch (Exception e) {
-			if (id != null) {
-				pending.remove(id);
+			if (id == null) {
+				return CompletableFuture.failedFuture(e);
 			}
-			response.completeExceptionally(e);
+			failAwaiting(awaiting, e);
 			return response;
 		}
 	}
 
-	private CompletableFuture<JsonNode> postMessage(URI endpoint, ObjectNode payload, Integer id, CompletableFuture<JsonNode> response) {
+	private CompletableFuture<Void> postMessage(
+		URI endpoint,
+		JsonNode payload,
+		String method,
+		List<Long> awaiting,
+		boolean batch) {
 		try {
 			String json = mapper.writeValueAsString(payload);
-			log(">> " + json);
+			wireSink.accept(WireEvent.message(WireEvent.Direction.OUT, payload, json.length()));
 			log("post message " + endpoint);
 			HttpRequest.Builder builder = HttpRequest.newBuilder()
 				.uri(endpoint)
-				.timeout(REQUEST_TIMEOUT)
+				.timeout(timeouts.limitFor(method))
 				.POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
 				.header("Content-Type", "application/json")
 				.header("Accept", "application/json, text/event-stream");
-			String method = payload.has("method") ? payload.get("method").asText("") : "";
-			logRequestLine(method, endpoint);
 			Map<String, String> activeHeaders = headers == null ? null : headers.get();
-			if (activeHeaders != null && !activeHeaders.isEmpty()) {
-				logRequestHeaders(method, endpoint, activeHeaders);
+			wireSink.accept(WireEvent.request(method, endpoint, activeHeaders));
+			if (activeHeaders != null) {
 				for (Map.Entry<String, String> entry : activeHeaders.entrySet()) {
 					builder.header(entry.getKey(), entry.getValue());
 				}
 			}
-			else {
-				log(">> HTTP headers" + formatMethodSuffix(method) + ": (none)");
-			}
-			return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream())
+			HttpResponse.BodyHandler<Void> handler = info -> {
+				wireSink.accept(WireEvent.response(method, endpoint, info));
+				captureSessionId(info.headers());
+				if (info.statusCode() < 400) {
+					return HttpResponse.BodySubscribers.discarding();
+				}
+				if (info.statusCode() == 401) {
+					logUnauthorized(info.headers());
+					handleUnauthorized(info.headers());
+				}
+				return HttpResponse.BodySubscribers.mapping(
+					HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+					body -> {
+						wireSink.accept(WireEvent.body(WireEvent.Direction.IN, method, body));
+						HttpStatusException error = HttpStatusException.from(info.statusCode(), info.headers(), body);
+						if (batch && rejectsBatch(info.statusCode())) {
+							throw new BatchRejectedException(error.getMessage());
+						}
+						throw error;
+					}
+				);
+			};
+			return clients.sendAsync(builder.build(), handler)
 				.handle(
 					(httpResponse, error) -> {
 						if (error != null) {
-							if (id != null) {
-								pending.remove(id);
-							}
-							response.completeExceptionally(error);
-							return response;
+							failAwaiting(awaiting, unwrap(error));
 						}
-						logResponseHeaders(method, httpResponse);
-						if (httpResponse.statusCode() >= 400) {
-							if (id != null) {
-								pending.remove(id);
-							}
-							if (httpResponse.statusCode() == 401) {
-								logUnauthorized(httpResponse);
-								handleUnauthorized(httpResponse);
-							}
-						String responseBody = null;
-						try (InputStream body = httpResponse.body()) {
-								responseBody = new String(body.readAllBytes(), StandardCharsets.UTF_8);
-								log("<< HTTP body" + formatMethodSuffix(method) + " " + responseBody);
-							}
-							catch (Exception ignored) {
-								log("<< HTTP body" + formatMethodSuffix(method) + ": (unreadable)");
-							}
-							String message = responseBody == null || responseBody.isBlank()
-								? "HTTP " + httpResponse.statusCode() + " from server"
-								: "HTTP " + httpResponse.statusCode() + " from server: " + responseBody;
-							response.completeExceptionally(new IllegalStateException(message));
+						return null;
+					}
+				);
+		}
+		catch (Exception e) {
+			failAwaiting(awaiting, e);
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	private CompletableFuture<List<JsonNode>> sendBatch(List<BatchCall> calls) {
+		ArrayNode payload = mapper.createArrayNode();
+		List<Long> awaiting = new ArrayList<>(calls.size());
+		List<CompletableFuture<JsonNode>> results = new ArrayList<>(calls.size());
+		for (BatchCall call : calls) {
+			long id = nextId.getAndIncrement();
+			ObjectNode message = payload.addObject();
+			message.put("jsonrpc", "2.0");
+			message.put("id", id);
+			message.put("method", call.method);
+			if (call.params != null) {
+				message.set("params", call.params);
+			}
+			results.add(pending.register(id, call.method, PendingRequests.Mode.RAW));
+			awaiting.add(id);
+		}
+		pending.addBatch(awaiting);
+		try {
+			ensureStream();
+			resolveEndpoint()
+				.thenCompose(
+					endpoint -> {
+						if (awaiting.stream().anyMatch(id -> pending.get(id) == null)) {
+							failAwaiting(awaiting, new IllegalStateException("SSE stream lost before the batch was sent"));
+							return CompletableFuture.<Void>completedFuture(null);
 						}
-						captureSessionId(httpResponse);
-						return response;
+						return postMessage(endpoint, payload, "batch", awaiting, true);
 					}
 				)
-				.thenCompose(future -> future);
+				.exceptionally(
+					error -> {
+						failAwaiting(awaiting, error);
+						return null;
+					}
+				);
 		}
 		catch (Exception e) {
-			if (id != null) {
-				pending.remove(id);
+			failAwaiting(awaiting, e);
+		}
+		return CompletableFuture.allOf(results.toArray(CompletableFuture<?>[]::new))
+			.handle(
+				(ignored, error) -> {
+					pending.removeBatch(awaiting);
+					return BatchCall.settle(mapper, awaiting, results);
+				}
+			);
+	}
+
+	private void failAwaiting(List<Long> awaiting, Throwable error) {
+		for (long id : awaiting) {
+			PendingRequests.Entry entry = pending.remove(id);
+			if (entry != null) {
+				entry.fail(error);
 			}
-			response.completeExceptionally(e);
-			return response;
 		}
 	}
 
+	private static boolean rejectsBatch(int statusCode) {
+		return statusCode >= 400 && statusCode < 500 && statusCode != 401 && statusCode != 403 && statusCode != 404 && statusCode != 429;
+	}
+
 	private void ensureStream() {
 		if (!streamStarted.compareAndSet(false, true)) {
 			return;
 		}
+		streamBackoff.reset();
+		openStream();
+	}
+
+	private void openStream() {
+		if (closed) {
+			return;
+		}
 		HttpRequest.Builder builder = HttpRequest.newBuilder()
 			.uri(sseEndpoint)
 			.GET()
 			.header("Accept", "application/json, text/event-stream");
-		logRequestLine("sse", sseEndpoint);
+		String eventId = lastEventId;
+		if (eventId != null) {
+			builder.header("Last-Event-ID", eventId);
+		}
 		Map<String, String> activeHeaders = headers == null ? null : headers.get();
-		if (activeHeaders != null && !activeHeaders.isEmpty()) {
-			logRequestHeaders("sse", sseEndpoint, activeHeaders);
+		wireSink.accept(WireEvent.request("sse", sseEndpoint, activeHeaders));
+		if (activeHeaders != null) {
 			for (Map.Entry<String, String> entry : activeHeaders.entrySet()) {
 				builder.header(entry.getKey(), entry.getValue());
 			}
 		}
-		else {
-			log(">> HTTP headers" + formatMethodSuffix("sse") + ": (none)");
-		}
 		log("sse connecting " + sseEndpoint);
-		client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream())
-			.thenAccept(
-				response -> {
-					logResponseHeaders("sse", response);
-					String contentType = response.headers().firstValue("Content-Type").orElse("");
-					if (response.statusCode() >= 400) {
-						if (response.statusCode() == 401) {
-							logUnauthorized(response);
-							handleUnauthorized(response);
-						}
-						try (InputStream body = response.body()) {
-							String payload = new String(body.readAllBytes(), StandardCharsets.UTF_8);
-							log("<< HTTP body" + formatMethodSuffix("sse") + " " + payload);
-						}
-						catch (Exception ignored) {
-						}
-						failAll(new IllegalStateException("HTTP " + response.statusCode() + " from SSE server"));
-						sseReady.completeExceptionally(new IllegalStateException("HTTP " + response.statusCode() + " from SSE server"));
-						return;
-					}
-					if (!contentType.toLowerCase().contains("text/event-stream")) {
-						try (InputStream body = response.body()) {
-							String payload = new String(body.readAllBytes(), StandardCharsets.UTF_8);
-							log("<< HTTP body" + formatMethodSuffix("sse") + " " + payload);
-							IllegalStateException error = new IllegalStateException("Unexpected SSE response Content-Type: " + contentType);
-							failAll(error);
-							sseReady.completeExceptionally(error);
-						}
-						catch (Exception e) {
-							failAll(e);
-							sseReady.completeExceptionally(e);
-						}
-						return;
-					}
-					captureSessionId(response);
-					sseReady.complete(null);
-					log("sse connected " + sseEndpoint + " status=" + response.statusCode());
-					parseSseStream(response.body());
-				}
-			)
-			.exceptionally(error -> {
-				failAll(error);
-				sseReady.completeExceptionally(error);
-				return null;
-			});
-	}
-
-	private void parseSseStream(InputStream input) {
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
-			StringBuilder data = new StringBuilder();
-			String line;
-			while ((line = reader.readLine()) != null) {
-				log("<< [sse] " + line);
-				if (line.startsWith("data:")) {
-					data.append(line.substring(5).stripLeading());
-					data.append('\n');
+		SseDecoder decoder = new SseDecoder();
+		HttpResponse.BodyHandler<Boolean> handler = info -> {
+			wireSink.accept(WireEvent.response("sse", sseEndpoint, info));
+			String contentType = info.headers().firstValue("Content-Type").orElse("");
+			if (info.statusCode() >= 400) {
+				if (info.statusCode() == 401) {
+					logUnauthorized(info.headers());
+					handleUnauthorized(info.headers());
 				}
-				else if (line.isBlank()) {
-					String payload = data.toString().trim();
-					data.setLength(0);
-					if (!payload.isEmpty()) {
-						handleEvent(payload);
+				return rejectStream(new IllegalStateException("HTTP " + info.statusCode() + " from SSE server"));
+			}
+			if (!contentType.toLowerCase().contains("text/event-stream")) {
+				return rejectStream(new IllegalStateException("Unexpected SSE response Content-Type: " + contentType));
+			}
+			captureSessionId(info.headers());
+			streamBackoff.reset();
+			sseReady.complete(null);
+			log("sse connected " + sseEndpoint + " status=" + info.statusCode());
+			if (!replayQueue.isEmpty()) {
+				replayPending();
+			}
+			return FrameSubscriber.events(
+				decoder,
+				event -> {
+					if (event.id() != null) {
+						lastEventId = event.id();
 					}
+					handleEvent(event);
+					return closed;
 				}
-				else if (line.startsWith("event:") || line.startsWith("id:") || line.startsWith("retry:")) {
-					continue;
+			);
+		};
+		CompletableFuture<HttpResponse<Boolean>> current = clients.sendAsync(builder.build(), handler);
+		stream = current;
+		current.whenComplete(
+			(response, error) -> streamEnded(
+				decoder,
+				error == null ? new IllegalStateException("SSE stream ended") : unwrap(error))
+		);
+	}
+
+	private void streamEnded(SseDecoder decoder, Throwable failure) {
+		sseReady.completeExceptionally(failure);
+		sseReady = new CompletableFuture<>();
+		if (!endpointConfigured && messageEndpoint.isDone()) {
+			messageEndpoint = new CompletableFuture<>();
+		}
+		if (closed) {
+			failAll(failure);
+			return;
+		}
+		streamBackoff.serverRetry(decoder.retryMillis());
+		if (streamBackoff.attempts() >= MAX_RECONNECTS) {
+			log("!! sse reconnect abandoned after " + MAX_RECONNECTS + " attempts: " + failure.getMessage());
+			failAll(failure);
+			replayQueue.clear();
+			streamStarted.set(false);
+			return;
+		}
+		pending.removeIf(entry -> !replays.containsKey(entry.id))
+			.forEach(entry -> entry.fail(failure));
+		replays.forEach(
+			(id, replay) -> {
+				if (replay.posted && pending.get(id) != null && !replayQueue.contains(id)) {
+					replayQueue.add(id);
 				}
-				else if (line.startsWith(":")) {
-					log("<< [sse:comment] " + line.substring(1).stripLeading());
+			}
+		);
+		Duration delay = streamBackoff.next();
+		streamReconnects.incrementAndGet();
+		log("!! sse stream lost (" + failure.getMessage() + "), reconnect in " + delay.toMillis() + " ms"
+			+ (replayQueue.isEmpty() ? "" : ", " + replayQueue.size() + " request(s) to replay"));
+		DeadlineTimer.shared().schedule(delay, this::openStream);
+	}
+
+	private void replayPending() {
+		resolveEndpoint()
+			.whenComplete(
+				(endpoint, error) -> {
+					Long id;
+					while ((id = replayQueue.poll()) != null) {
+						Replay replay = replays.get(id);
+						if (replay == null || pending.get(id) == null) {
+							continue;
+						}
+						if (error != null) {
+							failAwaiting(List.of(id), unwrap(error));
+							continue;
+						}
+						replayedRequests.incrementAndGet();
+						log("replaying request " + id + formatMethodSuffix(replay.method));
+						postMessage(endpoint, replay.payload, replay.method, List.of(id), false);
+					}
 				}
+			);
+	}
+
+	private HttpResponse.BodySubscriber<Boolean> rejectStream(IllegalStateException error) {
+		return HttpResponse.BodySubscribers.mapping(
+			HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+			body -> {
+				wireSink.accept(WireEvent.body(WireEvent.Direction.IN, "sse", body));
+				throw error;
 			}
+		);
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		Throwable current = error;
+		while (current instanceof CompletionException && current.getCause() != null) {
+			current = current.getCause();
 		}
-		catch (Exception e) {
-			failAll(e);
-		}
-		failAll(new IllegalStateException("SSE stream ended"));
+		return current;
 	}
 
-	private void handleEvent(String payload) throws Exception {
-		log("<< " + payload);
-		String trimmed = payload.trim();
-		if (looksLikeUrl(trimmed)) {
-			setMessageEndpoint(trimmed);
+	private void handleEvent(SseDecoder.Event event) throws Exception {
+		if (event.isBlank()) {
+			return;
+		}
+		if ("endpoint".equals(event.type()) || looksLikeUrl(event)) {
+			String endpoint = event.dataString().trim();
+			log("<< " + endpoint);
+			setMessageEndpoint(endpoint);
+			return;
+		}
+		JsonNode node = mapper.readTree(event.data(), 0, event.dataLength());
+		wireSink.accept(WireEvent.message(WireEvent.Direction.IN, node, event.dataLength()));
+		if (node.isArray()) {
+			batchesAnswered = true;
+			node.forEach(this::handleResponse);
+			BatchCall.failUnanswered(pending, node);
 			return;
 		}
-		JsonNode node = mapper.readTree(payload);
 		if (node.has("endpoint") && !messageEndpoint.isDone()) {
 			String endpoint = node.get("endpoint").asText(null);
 			setMessageEndpoint(endpoint);
 			return;
 		}
+		if (BatchCall.isRejection(node)) {
+			BatchRejectedException error = new BatchRejectedException("Batch rejected: " + node.get("error"));
+			if (batchesAnswered || !pending.rejectBatch(error)) {
+				log("!! error without request id: " + node.get("error"));
+			}
+			return;
+		}
+		handleResponse(node);
+	}
+
+	private boolean dispatchNotification(JsonNode message) {
+		if (!message.has("method") || message.has("id")) {
+			return false;
+		}
+		Consumer<JsonNode> handler = notificationHandler;
+		if (handler != null) {
+			try {
+				handler.accept(message);
+			}
+			catch (RuntimeException e) {
+				log("!! notification handler failed: " + e.getMessage());
+			}
+		}
+		return true;
+	}
+
+	private void handleResponse(JsonNode node) {
+		if (dispatchNotification(node)) {
+			return;
+		}
+		if (node.path("id").isNull() && node.has("error")) {
+			log("!! error without request id: " + node.get("error"));
+			return;
+		}
 		if (node.has("id")) {
-			int id = node.get("id").asInt();
-			CompletableFuture<JsonNode> future = pending.remove(id);
-			if (future != null) {
-				future.complete(node);
+			PendingRequests.Entry entry = pending.remove(node.get("id").asLong());
+			if (entry != null) {
+				entry.complete(node);
 			}
 		}
 	}
 
 	private void failAll(Throwable error) {
 		RuntimeException failure = error instanceof RuntimeException ? (RuntimeException) error : new IllegalStateException("SSE failure", error);
-		pending.forEach((id, future) -> future.completeExceptionally(failure));
-		pending.clear();
+		pending.failAll(failure);
 	}
 
 	private CompletableFuture<URI> resolveEndpoint() {
-		if (messageEndpoint.isDone()) {
-			return messageEndpoint;
+		CompletableFuture<URI> endpoint = messageEndpoint;
+		if (endpoint.isDone()) {
+			return endpoint;
 		}
 		log("sse waiting for message endpoint");
-		return messageEndpoint.orTimeout(15, TimeUnit.SECONDS)
+		return endpoint.copy().orTimeout(15, TimeUnit.SECONDS)
 			.exceptionally(
 				error -> {
 					if (fallbackEndpoint != null) {
 						log("sse endpoint not received, using fallback " + fallbackEndpoint);
+						endpoint.complete(fallbackEndpoint);
 						return fallbackEndpoint;
 					}
 					log("sse endpoint not received, cannot post without message endpoint");
@@ -419,38 +667,64 @@ public class SseMcpClient implements McpClient {
 	}
 
 	private void setMessageEndpoint(String endpoint) {
-		if (endpoint == null || endpoint.isBlank() || messageEndpoint.isDone()) {
+		CompletableFuture<URI> current = messageEndpoint;
+		if (endpoint == null || endpoint.isBlank() || current.isDone()) {
 			return;
 		}
-		messageEndpoint.complete(URI.create(endpoint));
+		current.complete(sseEndpoint.resolve(endpoint.trim()));
 		log("sse endpoint " + endpoint);
 	}
 
-	private boolean looksLikeUrl(String value) {
-		if (value == null || value.isBlank()) {
+	private static final class Replay {
+		private final ObjectNode payload;
+		private final String method;
+		private volatile boolean posted;
+
+		private Replay(ObjectNode payload, String method) {
+			this.payload = payload;
+			this.method = method;
+		}
+	}
+
+	private static boolean looksLikeUrl(SseDecoder.Event event) {
+		byte[] data = event.data();
+		int start = 0;
+		while (start < event.dataLength() && (data[start] & 0xFF) <= ' ') {
+			start++;
+		}
+		return startsWithIgnoreCase(data, start, event.dataLength(), "http://")
+			|| startsWithIgnoreCase(data, start, event.dataLength(), "https://");
+	}
+
+	private static boolean startsWithIgnoreCase(byte[] data, int offset, int limit, String prefix) {
+		if (limit - offset < prefix.length()) {
 			return false;
 		}
-		String lower = value.toLowerCase();
-		return lower.startsWith("http://") || lower.startsWith("https://");
+		for (int i = 0; i < prefix.length(); i++) {
+			if (Character.toLowerCase((char) data[offset + i]) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	private void log(String message) {
 		logSink.accept(message);
-		LOGGER.info(message);
+		LOGGER.debug(message);
 	}
 
-	private void handleUnauthorized(HttpResponse<?> response) {
+	private void handleUnauthorized(HttpHeaders responseHeaders) {
 		if (unauthorizedHandler == null) {
 			return;
 		}
-		String header = response.headers().firstValue("WWW-Authenticate").orElse(null);
+		String header = responseHeaders.firstValue("WWW-Authenticate").orElse(null);
 		unauthorizedHandler.accept(header);
 	}
 
-	private void logUnauthorized(HttpResponse<?> response) {
+	private void logUnauthorized(HttpHeaders responseHeaders) {
 		StringBuilder builder = new StringBuilder();
 		builder.append("<< HTTP 401 headers:\n");
-		response.headers().map().forEach(
+		responseHeaders.map().forEach(
 			(key, values) -> {
 				builder.append(key).append("=");
 				if (values != null && !values.isEmpty()) {
@@ -466,47 +740,21 @@ public class SseMcpClient implements McpClient {
 		}
 	}
 
-	private void captureSessionId(HttpResponse<?> response) {
-		if (sessionIdSink == null || response == null) {
+	private void captureSessionId(HttpHeaders responseHeaders) {
+		if (responseHeaders == null) {
 			return;
 		}
-		response.headers().firstValue("mcp-session-id").ifPresent(
+		responseHeaders.firstValue("mcp-session-id").ifPresent(
 			value -> {
-				lastSessionId = value;
-				sessionIdSink.accept(value);
-			}
-		);
-	}
-
-	private void logResponseHeaders(String method, HttpResponse<?> response) {
-		if (response == null) {
-			return;
-		}
-		StringBuilder builder = new StringBuilder();
-		builder.append("<< HTTP response");
-		if (method != null && !method.isBlank()) {
-			builder.append(" (").append(method).append(")");
-		}
-		builder.append(" ").append(response.statusCode());
-		try {
-			URI uri = response.request() != null ? response.request().uri() : null;
-			if (uri != null) {
-				builder.append(" ").append(uri);
-			}
-		}
-		catch (Exception ignored) {
-		}
-		builder.append("\n");
-		response.headers().map().forEach(
-			(key, values) -> {
-				builder.append(key).append("=");
-				if (values != null && !values.isEmpty()) {
-					builder.append(String.join(";", values));
+				if (value.isBlank()) {
+					return;
+				}
+				sessionId.complete(value);
+				if (sessionIdSink != null) {
+					sessionIdSink.accept(value);
 				}
-				builder.append("\n");
 			}
 		);
-		log(builder.toString().trim());
 	}
 
 	private static String formatMethodSuffix(String method) {
@@ -516,24 +764,13 @@ public class SseMcpClient implements McpClient {
 		return " (" + method + ")";
 	}
 
-	private boolean waitForSessionId() {
-		if (lastSessionId != null && !lastSessionId.isBlank()) {
-			return true;
+	private CompletableFuture<Boolean> awaitSessionId() {
+		if (sessionId.isDone()) {
+			return CompletableFuture.completedFuture(true);
 		}
-		long deadline = System.currentTimeMillis() + 1500;
-		while (System.currentTimeMillis() < deadline) {
-			if (lastSessionId != null && !lastSessionId.isBlank()) {
-				return true;
-			}
-			try {
-				Thread.sleep(50);
-			}
-			catch (InterruptedException ignored) {
-				Thread.currentThread().interrupt();
-				break;
-			}
-		}
-		return lastSessionId != null && !lastSessionId.isBlank();
+		return sessionId.copy()
+			.completeOnTimeout(null, SESSION_ID_GRACE.toMillis(), TimeUnit.MILLISECONDS)
+			.thenApply(value -> value != null);
 	}
 
 	private CompletableFuture<Void> maybeWaitForSseReady(ObjectNode payload) {
@@ -548,50 +785,6 @@ public class SseMcpClient implements McpClient {
 			.exceptionally(error -> null);
 	}
 
-	private void logRequestHeaders(String method, URI url, Map<String, String> activeHeaders) {
-		if (activeHeaders == null || activeHeaders.isEmpty()) {
-			return;
-		}
-		StringBuilder builder = new StringBuilder();
-		builder.append(">> HTTP headers");
-		if (method != null && !method.isBlank()) {
-			builder.append(" (").append(method).append(")");
-		}
-		if (url != null) {
-			builder.append(" ").append(url);
-		}
-		builder.append("\n");
-		activeHeaders.forEach(
-			(key, value) -> {
-				String output = value;
-				if ("authorization".equalsIgnoreCase(key) && value != null && !value.isBlank()) {
-					int space = value.indexOf(' ');
-					if (space > 0) {
-						String scheme = value.substring(0, space).trim();
-						output = scheme.isBlank() ? "****" : scheme + " ****";
-					}
-					else {
-						output = "****";
-					}
-				}
-				builder.append(key).append("=").append(output == null ? "" : output).append("\n");
-			}
-		);
-		log(builder.toString().trim());
-	}
-
-	private void logRequestLine(String method, URI url) {
-		StringBuilder builder = new StringBuilder();
-		builder.append(">> HTTP request");
-		if (method != null && !method.isBlank()) {
-			builder.append(" (").append(method).append(")");
-		}
-		if (url != null) {
-			builder.append(" ").append(url);
-		}
-		log(builder.toString());
-	}
-
 	private static URI deriveMessageEndpoint(String sseUrl, String messageUrl) {
 		if (messageUrl != null && !messageUrl.isBlank()) {
 			return URI.create(messageUrl);
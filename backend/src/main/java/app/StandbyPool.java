@@ -0,0 +1,164 @@
+package app;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+public class StandbyPool {
+	private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+	private final Function<ServerConfig, Standby> warmer;
+	private final SessionThreads threads;
+	private final BiConsumer<String, String> failureSink;
+
+	public StandbyPool(Function<ServerConfig, Standby> warmer, SessionThreads threads, BiConsumer<String, String> failureSink) {
+		this.warmer = warmer;
+		this.threads = threads;
+		this.failureSink = failureSink;
+	}
+
+	public static int target(ServerConfig config) {
+		return config.warmStandby == null ? 0 : Math.max(0, config.warmStandby);
+	}
+
+	public Standby take(String serverId) {
+		Slot slot = slots.get(serverId);
+		if (slot == null) {
+			return null;
+		}
+		List<Standby> dropped = new ArrayList<>();
+		Standby taken = null;
+		synchronized (slot) {
+			while (!slot.ready.isEmpty()) {
+				Standby standby = slot.ready.pollFirst();
+				if (standby.instance.process.isAlive() && !standby.stale) {
+					taken = standby;
+					break;
+				}
+				dropped.add(standby);
+			}
+		}
+		dropped.forEach(Standby::destroy);
+		return taken;
+	}
+
+	public void replenish(ServerConfig config) {
+		int target = target(config);
+		Slot slot = slots.computeIfAbsent(config.id, id -> new Slot());
+		int missing;
+		long generation;
+		synchronized (slot) {
+			missing = target - slot.ready.size() - slot.warming;
+			slot.warming += Math.max(missing, 0);
+			generation = slot.generation;
+		}
+		for (int i = 0; i < missing; i++) {
+			threads.start("mcp-standby-" + config.id, () -> warm(config, slot, generation, target));
+		}
+	}
+
+	public void discard(String serverId) {
+		Slot slot = slots.get(serverId);
+		if (slot == null) {
+			return;
+		}
+		List<Standby> dropped;
+		synchronized (slot) {
+			slot.generation++;
+			dropped = List.copyOf(slot.ready);
+			slot.ready.clear();
+		}
+		dropped.forEach(Standby::destroy);
+	}
+
+	public void discardAll() {
+		slots.keySet().forEach(this::discard);
+	}
+
+	public int ready(String serverId) {
+		Slot slot = slots.get(serverId);
+		if (slot == null) {
+			return 0;
+		}
+		synchronized (slot) {
+			return slot.ready.size();
+		}
+	}
+
+	private void warm(ServerConfig config, Slot slot, long generation, int target) {
+		Standby standby;
+		try {
+			standby = warmer.apply(config);
+		}
+		catch (RuntimeException e) {
+			synchronized (slot) {
+				slot.warming--;
+			}
+			failureSink.accept(config.id, e.getMessage());
+			return;
+		}
+		boolean kept;
+		synchronized (slot) {
+			slot.warming--;
+			kept = slot.generation == generation && slot.ready.size() < target;
+			if (kept) {
+				slot.ready.addLast(standby);
+			}
+		}
+		if (!kept) {
+			standby.destroy();
+			return;
+		}
+		standby.instance.process.onExit()
+			.thenRun(
+				() -> {
+					synchronized (slot) {
+						slot.ready.remove(standby);
+					}
+				}
+			);
+	}
+
+	private static final class Slot {
+		private final ArrayDeque<Standby> ready = new ArrayDeque<>();
+		private int warming;
+		private long generation;
+	}
+
+	public static final class Standby {
+		public final PooledMcpClient.Member instance;
+		public final RequestTimeouts timeouts;
+		public final JsonNode initialize;
+		public final JsonNode tools;
+		public final JsonNode resources;
+		public final JsonNode prompts;
+		private volatile boolean stale;
+
+		public Standby(
+			PooledMcpClient.Member instance,
+			RequestTimeouts timeouts,
+			JsonNode initialize,
+			JsonNode tools,
+			JsonNode resources,
+			JsonNode prompts) {
+			this.instance = instance;
+			this.timeouts = timeouts;
+			this.initialize = initialize;
+			this.tools = tools;
+			this.resources = resources;
+			this.prompts = prompts;
+		}
+
+		public void markStale() {
+			stale = true;
+		}
+
+		private void destroy() {
+			instance.client.close();
+			instance.process.destroy();
+		}
+	}
+}
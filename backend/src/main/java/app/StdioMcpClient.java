@@ -4,21 +4,30 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 public class StdioMcpClient implements McpClient {
 	private final ObjectMapper mapper;
 	private final JsonRpcConnection connection;
+	private final RequestTimeouts timeouts;
+	private volatile boolean batchUnsupported;
 
 	public StdioMcpClient(
 		ObjectMapper mapper,
 		InputStream input,
 		OutputStream output,
 		java.util.function.Consumer<String> logSink,
-		JsonRpcConnection.Framing framing) {
+		java.util.function.Consumer<WireEvent> wireSink,
+		JsonRpcConnection.Framing framing,
+		SessionThreads threads,
+		RequestTimeouts timeouts,
+		ResponseSpool spool) {
 		this.mapper = mapper;
-		this.connection = new JsonRpcConnection(mapper, input, output, logSink, framing);
+		this.timeouts = timeouts;
+		this.connection = new JsonRpcConnection(mapper, input, output, logSink, wireSink, framing, threads, timeouts, spool);
 		this.connection.start();
 	}
 
@@ -69,6 +78,19 @@ public class StdioMcpClient implements McpClient {
 		return connection.requestRaw("tools/call", params);
 	}
 
+	@Override
+	public CompletableFuture<SpooledResult> callToolStreaming(String name, JsonNode arguments, JsonNode meta) {
+		ObjectNode params = mapper.createObjectNode();
+		params.put("name", name);
+		if (arguments != null) {
+			params.set("arguments", arguments);
+		}
+		if (meta != null && !meta.isNull()) {
+			params.set("_meta", meta);
+		}
+		return connection.requestSpooled("tools/call", params);
+	}
+
 	@Override
 	public CompletableFuture<JsonNode> readResource(String uri) {
 		ObjectNode params = mapper.createObjectNode();
@@ -85,4 +107,29 @@ public class StdioMcpClient implements McpClient {
 		}
 		return connection.request("prompts/get", params);
 	}
+
+	@Override
+	public CompletableFuture<List<JsonNode>> batch(List<BatchCall> calls) {
+		if (batchUnsupported) {
+			return BatchCall.sequential(calls, call -> connection.requestRaw(call.method, call.params));
+		}
+		return BatchCall.withFallback(
+			calls,
+			connection.requestBatch(calls),
+			() -> batchUnsupported = true,
+			call -> connection.requestRaw(call.method, call.params));
+	}
+
+	@Override
+	public void onNotification(java.util.function.Consumer<JsonNode> handler) {
+		connection.onNotification(handler);
+	}
+
+	@Override
+	public Map<String, Long> metrics() {
+		Map<String, Long> metrics = new HashMap<>(connection.writerMetrics());
+		metrics.put("timedOutRequests", connection.timedOutRequests());
+		metrics.putAll(timeouts.metrics());
+		return metrics;
+	}
 }
@@ -1,51 +1,84 @@
 package app;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Supplier;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class StreamableHttpMcpClient implements McpClient {
-	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
-	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+	private static final Duration STREAM_RETRY = Duration.ofSeconds(1);
+	private static final Duration STREAM_RETRY_MAX = Duration.ofSeconds(30);
 	private final ObjectMapper mapper;
-	private final HttpClient client;
+	private final HttpClients clients;
 	private final URI endpoint;
 	private final Supplier<Map<String, String>> headers;
 	private final Consumer<String> logSink;
+	private final Consumer<WireEvent> wireSink;
 	private final Consumer<String> unauthorizedHandler;
 	private final Consumer<String> authHeadersSink;
 	private final Consumer<String> sessionIdSink;
-	private final AtomicInteger nextId = new AtomicInteger(1);
+	private final AtomicLong nextId = new AtomicLong(1);
+	private final AtomicLong timedOut = new AtomicLong();
+	private final RequestTimeouts timeouts;
+	private final ResponseSpool spool;
+	private final PendingRequests pending;
+	private volatile boolean batchUnsupported;
+	private final Backoff streamBackoff = new Backoff(STREAM_RETRY, STREAM_RETRY_MAX);
+	private final AtomicBoolean streamOpen = new AtomicBoolean();
+	private final AtomicLong streamReconnects = new AtomicLong();
+	private final AtomicLong resumedStreams = new AtomicLong();
+	private volatile CompletableFuture<HttpResponse<Boolean>> stream;
+	private volatile String lastEventId;
+	private volatile boolean streamUnsupported;
+	private volatile boolean closed;
+	private volatile Consumer<JsonNode> notificationHandler;
 
 	public StreamableHttpMcpClient(
 		ObjectMapper mapper,
+		HttpClients clients,
 		String url,
 		Supplier<Map<String, String>> headers,
 		Consumer<String> logSink,
+		Consumer<WireEvent> wireSink,
 		Consumer<String> unauthorizedHandler,
 		Consumer<String> authHeadersSink,
-		Consumer<String> sessionIdSink) {
+		Consumer<String> sessionIdSink,
+		RequestTimeouts timeouts,
+		ResponseSpool spool) {
 		this.mapper = mapper;
-		this.client = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+		this.clients = clients;
 		this.endpoint = URI.create(url);
 		this.headers = headers;
 		this.logSink = logSink;
+		this.wireSink = wireSink;
 		this.unauthorizedHandler = unauthorizedHandler;
 		this.authHeadersSink = authHeadersSink;
 		this.sessionIdSink = sessionIdSink;
+		this.timeouts = timeouts;
+		this.spool = spool;
+		this.pending = new PendingRequests(
+			entry -> logSink.accept("!! request " + entry.id + formatMethodSuffix(entry.method) + " timed out after " + entry.timeout.toMillis() + " ms"),
+			timeouts);
 	}
 
 	@Override
@@ -63,6 +96,7 @@ public class StreamableHttpMcpClient implements McpClient {
 		return request("initialize", params)
 			.thenApply(result -> {
 				notify("initialized", null);
+				openStream();
 				return result;
 			});
 	}
@@ -95,6 +129,25 @@ public class StreamableHttpMcpClient implements McpClient {
 		return requestRaw("tools/call", params);
 	}
 
+	@Override
+	public CompletableFuture<SpooledResult> callToolStreaming(String name, JsonNode arguments, JsonNode meta) {
+		ObjectNode params = mapper.createObjectNode();
+		params.put("name", name);
+		if (arguments != null) {
+			params.set("arguments", arguments);
+		}
+		if (meta != null && !meta.isNull()) {
+			params.set("_meta", meta);
+		}
+		long id = nextId.getAndIncrement();
+		ObjectNode payload = mapper.createObjectNode();
+		payload.put("jsonrpc", "2.0");
+		payload.put("id", id);
+		payload.put("method", "tools/call");
+		payload.set("params", params);
+		return sendSpooled(payload, id, "tools/call");
+	}
+
 	@Override
 	public CompletableFuture<JsonNode> readResource(String uri) {
 		ObjectNode params = mapper.createObjectNode();
@@ -112,8 +165,45 @@ public class StreamableHttpMcpClient implements McpClient {
 		return request("prompts/get", params);
 	}
 
+	@Override
+	public CompletableFuture<List<JsonNode>> batch(List<BatchCall> calls) {
+		if (batchUnsupported) {
+			return BatchCall.sequential(calls, call -> requestRaw(call.method, call.params));
+		}
+		return BatchCall.withFallback(
+			calls,
+			sendBatch(calls),
+			() -> batchUnsupported = true,
+			call -> requestRaw(call.method, call.params));
+	}
+
+	@Override
+	public void onNotification(Consumer<JsonNode> handler) {
+		this.notificationHandler = handler;
+	}
+
+	@Override
+	public Map<String, Long> metrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>(clients.metrics(endpoint));
+		metrics.put("timedOutRequests", timedOut.get() + pending.timedOutRequests());
+		metrics.put("streamReconnects", streamReconnects.get());
+		metrics.put("resumedStreams", resumedStreams.get());
+		metrics.putAll(timeouts.metrics());
+		return metrics;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		CompletableFuture<HttpResponse<Boolean>> current = stream;
+		if (current != null) {
+			current.cancel(true);
+		}
+		pending.failAll(new IllegalStateException("Client closed"));
+	}
+
 	private CompletableFuture<JsonNode> request(String method, JsonNode params) {
-		int id = nextId.getAndIncrement();
+		long id = nextId.getAndIncrement();
 		ObjectNode payload = mapper.createObjectNode();
 		payload.put("jsonrpc", "2.0");
 		payload.put("id", id);
@@ -136,7 +226,7 @@ public class StreamableHttpMcpClient implements McpClient {
 	}
 
 	private CompletableFuture<JsonNode> requestRaw(String method, JsonNode params) {
-		int id = nextId.getAndIncrement();
+		long id = nextId.getAndIncrement();
 		ObjectNode payload = mapper.createObjectNode();
 		payload.put("jsonrpc", "2.0");
 		payload.put("id", id);
@@ -157,149 +247,436 @@ public class StreamableHttpMcpClient implements McpClient {
 		send(payload, null, method);
 	}
 
-	private CompletableFuture<JsonNode> send(ObjectNode payload, Integer id, String method) {
+	private CompletableFuture<JsonNode> send(ObjectNode payload, Long id, String method) {
+		if (id == null) {
+			return parseResponse(payload, null, method);
+		}
+		CompletableFuture<JsonNode> response = pending.register(id, method, PendingRequests.Mode.RAW);
+		ResponseCollector collector = new ResponseCollector(List.of(id), false);
+		readResponse(payload, collector, method, id)
+			.whenComplete((ignored, error) -> settle(id, method, collector, error));
+		return response;
+	}
+
+	private CompletableFuture<SpooledResult> sendSpooled(ObjectNode payload, long id, String method) {
+		CompletableFuture<SpooledResult> response = pending.register(id, method, PendingRequests.Mode.SPOOLED);
+		ResponseCollector collector = new ResponseCollector(List.of(id), false);
+		HttpResponse.BodyHandler<SpooledResult> handler = info -> {
+			String contentType = info.headers().firstValue("Content-Type").orElse("");
+			if (info.statusCode() >= 400 || isStreaming(contentType)) {
+				return HttpResponse.BodySubscribers.mapping(collect(info, collector, method), answered -> null);
+			}
+			onResponse(info, method);
+			return HttpResponse.BodySubscribers.mapping(spool.bodySubscriber(), result -> logSpooled(result, method));
+		};
+		post(payload, method, id, handler)
+			.whenComplete(
+				(httpResponse, error) -> {
+					SpooledResult body = error == null ? httpResponse.body() : null;
+					if (body != null) {
+						completeSpooled(id, body);
+						return;
+					}
+					if (error == null && collector.first == null) {
+						error = new IllegalStateException("Stream ended without response");
+					}
+					settle(id, method, collector, error);
+				}
+			);
+		return response;
+	}
+
+	private void settle(long id, String method, ResponseCollector collector, Throwable error) {
+		if (error != null && collector.first == null && collector.lastEventId != null && !closed) {
+			resumeStream(collector.lastEventId, id, method);
+			return;
+		}
+		complete(id, collector.first, error);
+	}
+
+	private void openStream() {
+		if (closed || streamUnsupported || !streamOpen.compareAndSet(false, true)) {
+			return;
+		}
+		stream = get(lastEventId, "stream", null);
+		stream.whenComplete(
+			(response, error) -> {
+				streamOpen.set(false);
+				if (closed || streamUnsupported) {
+					return;
+				}
+				if (error != null) {
+					logSink.accept("!! stream error: " + unwrap(error).getMessage());
+					int status = statusOf(error);
+					if (isFinal(status)) {
+						logSink.accept("stream not reopened after HTTP " + status);
+						return;
+					}
+				}
+				Duration delay = streamBackoff.next();
+				streamReconnects.incrementAndGet();
+				logSink.accept("stream reconnect in " + delay.toMillis() + " ms" + (lastEventId == null ? "" : " from event " + lastEventId));
+				DeadlineTimer.shared().schedule(delay, this::openStream);
+			}
+		);
+	}
+
+	private void resumeStream(String eventId, long id, String method) {
+		resumedStreams.incrementAndGet();
+		logSink.accept("resuming " + method + " from event " + eventId);
+		get(eventId, method, id)
+			.whenComplete(
+				(response, error) -> complete(
+					id,
+					null,
+					error != null ? error : new IllegalStateException("Resumed stream ended without response"))
+			);
+	}
+
+	private CompletableFuture<HttpResponse<Boolean>> get(String eventId, String method, Long awaitingId) {
+		boolean standalone = awaitingId == null;
+		HttpRequest.Builder builder = HttpRequest.newBuilder()
+			.uri(endpoint)
+			.GET()
+			.header("Accept", "text/event-stream");
+		if (eventId != null) {
+			builder.header("Last-Event-ID", eventId);
+		}
+		Map<String, String> activeHeaders = headers == null ? null : headers.get();
+		wireSink.accept(WireEvent.request(method, endpoint, activeHeaders));
+		if (activeHeaders != null) {
+			for (Map.Entry<String, String> entry : activeHeaders.entrySet()) {
+				builder.header(entry.getKey(), entry.getValue());
+			}
+		}
+		HttpResponse.BodyHandler<Boolean> handler = info -> {
+			onResponse(info, method);
+			if (standalone && info.statusCode() == 405) {
+				streamUnsupported = true;
+				logSink.accept("server does not offer a standalone stream");
+				return HttpResponse.BodySubscribers.replacing(false);
+			}
+			if (info.statusCode() >= 400) {
+				return HttpResponse.BodySubscribers.mapping(
+					HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+					body -> {
+						wireSink.accept(WireEvent.body(WireEvent.Direction.IN, method, body));
+						throw HttpStatusException.from(info.statusCode(), info.headers(), body);
+					}
+				);
+			}
+			if (standalone) {
+				streamBackoff.reset();
+			}
+			return FrameSubscriber.events(
+				new SseDecoder(),
+				event -> {
+					onStreamEvent(event, standalone);
+					return !standalone && pending.get(awaitingId) == null;
+				}
+			);
+		};
+		try {
+			return clients.sendAsync(builder.build(), handler);
+		}
+		catch (Exception e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	private void onStreamEvent(SseDecoder.Event event, boolean standalone) {
+		streamBackoff.serverRetry(event.retry());
+		if (standalone && event.id() != null) {
+			lastEventId = event.id();
+		}
+		if (event.isBlank()) {
+			return;
+		}
+		JsonNode node = parse(event.data(), 0, event.dataLength());
+		wireSink.accept(WireEvent.message(WireEvent.Direction.IN, node, event.dataLength()));
+		if (node.isArray()) {
+			node.forEach(this::route);
+		}
+		else {
+			route(node);
+		}
+	}
+
+	private void route(JsonNode message) {
+		if (dispatchNotification(message) || !message.has("id")) {
+			return;
+		}
+		if (message.has("method")) {
+			logSink.accept("!! unhandled server request " + message.get("id") + formatMethodSuffix(message.get("method").asText()));
+			return;
+		}
+		complete(message.get("id").asLong(), message, null);
+	}
+
+	private void complete(long id, JsonNode message, Throwable error) {
+		PendingRequests.Entry entry = pending.remove(id);
+		if (entry == null) {
+			return;
+		}
+		if (error != null) {
+			entry.fail(unwrap(error));
+			return;
+		}
+		if (entry.mode != PendingRequests.Mode.SPOOLED) {
+			entry.complete(message);
+			return;
+		}
+		try {
+			entry.complete(spoolMessage(message));
+		}
+		catch (RuntimeException e) {
+			entry.fail(e);
+		}
+	}
+
+	private void completeSpooled(long id, SpooledResult result) {
+		PendingRequests.Entry entry = pending.remove(id);
+		if (entry == null) {
+			logSink.accept("!! dropped late response " + id);
+			result.delete();
+			return;
+		}
+		entry.complete(result);
+	}
+
+	private void countTimeout(Long awaitingId, Throwable error) {
+		// A request whose deadline already expired was counted by PendingRequests.
+		if (error != null && unwrap(error) instanceof HttpTimeoutException && (awaitingId == null || pending.get(awaitingId) != null)) {
+			timedOut.incrementAndGet();
+		}
+	}
+
+	private <T> CompletableFuture<HttpResponse<T>> post(JsonNode payload, String method, Long awaitingId, HttpResponse.BodyHandler<T> handler) {
 		try {
 			String json = mapper.writeValueAsString(payload);
-			logSink.accept(">> " + json);
+			wireSink.accept(WireEvent.message(WireEvent.Direction.OUT, payload, json.length()));
 			HttpRequest.Builder builder = HttpRequest.newBuilder()
 				.uri(endpoint)
-				.timeout(REQUEST_TIMEOUT)
+				.timeout(timeouts.limitFor(method))
 				.POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
 				.header("Content-Type", "application/json")
 				.header("Accept", "application/x-ndjson, application/json, text/event-stream");
-			logRequestLine(method, endpoint);
 			Map<String, String> activeHeaders = headers == null ? null : headers.get();
-			if (activeHeaders != null && !activeHeaders.isEmpty()) {
-				logRequestHeaders(method, endpoint, activeHeaders);
+			wireSink.accept(WireEvent.request(method, endpoint, activeHeaders));
+			if (activeHeaders != null) {
 				for (Map.Entry<String, String> entry : activeHeaders.entrySet()) {
 					builder.header(entry.getKey(), entry.getValue());
 				}
 			}
-			else {
-				logSink.accept(">> HTTP headers" + formatMethodSuffix(method) + ": (none)");
-			}
-		return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream())
-			.thenCompose(response -> parseResponse(response, id, method));
+			return clients.sendAsync(builder.build(), handler)
+				.whenComplete((response, error) -> countTimeout(awaitingId, error));
 		}
 		catch (Exception e) {
-			CompletableFuture<JsonNode> failed = new CompletableFuture<>();
-			failed.completeExceptionally(e);
-			return failed;
-		}
-	}
-
-	private CompletableFuture<JsonNode> parseResponse(HttpResponse<InputStream> response, Integer id, String method) {
-		return CompletableFuture.supplyAsync(
-			() -> {
-				String contentType = response.headers().firstValue("Content-Type").orElse("");
-				logResponseHeaders(method, response);
-				captureSessionId(response);
-				try {
-					if (response.statusCode() >= 400) {
-						if (response.statusCode() == 401) {
-							logUnauthorized(response);
-							handleUnauthorized(response);
-						}
-						String body = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
-						logSink.accept("<< HTTP body" + formatMethodSuffix(method) + " " + body);
-						String message = body == null || body.isBlank()
-							? "HTTP " + response.statusCode() + " from server"
-							: "HTTP " + response.statusCode() + " from server: " + body;
-						throw new IllegalStateException(message);
-					}
-					if (contentType.contains("ndjson") || contentType.contains("jsonlines")) {
-						return parseNdjson(response.body(), id);
-					}
-					if (contentType.contains("text/event-stream")) {
-						return parseSse(response.body(), id);
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	private SpooledResult logSpooled(SpooledResult result, String method) {
+		logSink.accept("<< HTTP body" + formatMethodSuffix(method) + ": (" + (result.isInMemory() ? "buffered " : "spooled ") + result.messageLength + " bytes)");
+		return result;
+	}
+
+	private SpooledResult spoolMessage(JsonNode message) {
+		if (message == null) {
+			throw new IllegalStateException("Stream ended without response");
+		}
+		try {
+			return spool.spool(message);
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Failed to spool response", e);
+		}
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		Throwable current = error;
+		while (current instanceof CompletionException && current.getCause() != null) {
+			current = current.getCause();
+		}
+		return current;
+	}
+
+	private CompletableFuture<JsonNode> parseResponse(JsonNode payload, Long id, String method) {
+		ResponseCollector collector = new ResponseCollector(id == null ? null : List.of(id), false);
+		return readResponse(payload, collector, method, null)
+			.thenApply(ignored -> collector.first);
+	}
+
+	private CompletableFuture<Void> readResponse(JsonNode payload, ResponseCollector collector, String method, Long awaitingId) {
+		return post(payload, method, awaitingId, info -> collect(info, collector, method))
+			.thenAccept(
+				response -> {
+					if (!response.body()) {
+						throw new IllegalStateException("Stream ended without response");
 					}
-					String body = new String(response.body().readAllBytes(), StandardCharsets.UTF_8).trim();
-					if (body.isEmpty()) {
-						logSink.accept("<< HTTP body" + formatMethodSuffix(method) + ": (empty)");
-						return mapper.createObjectNode();
+				}
+			);
+	}
+
+	private HttpResponse.BodySubscriber<Boolean> collect(HttpResponse.ResponseInfo info, ResponseCollector collector, String method) {
+		onResponse(info, method);
+		if (info.statusCode() >= 400) {
+			return HttpResponse.BodySubscribers.mapping(
+				HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+				body -> {
+					wireSink.accept(WireEvent.body(WireEvent.Direction.IN, method, body));
+					HttpStatusException error = HttpStatusException.from(info.statusCode(), info.headers(), body);
+					if (collector.isBatch() && rejectsBatch(info.statusCode())) {
+						throw new BatchRejectedException(error.getMessage());
 					}
-					logSink.accept("<< HTTP body" + formatMethodSuffix(method) + " " + body);
-					return mapper.readTree(body);
+					throw error;
 				}
-				catch (Exception e) {
-					if (e instanceof IllegalStateException && e.getMessage() != null && e.getMessage().startsWith("HTTP ")) {
-						throw (IllegalStateException) e;
+			);
+		}
+		String contentType = info.headers().firstValue("Content-Type").orElse("");
+		if (contentType.contains("text/event-stream")) {
+			return FrameSubscriber.events(
+				new SseDecoder(),
+				event -> {
+					if (event.id() != null) {
+						collector.lastEventId = event.id();
 					}
-					throw new IllegalStateException("Failed to parse response", e);
+					return !event.isBlank() && offer(collector, event.data(), 0, event.dataLength());
+				}
+			);
+		}
+		if (isStreaming(contentType)) {
+			return FrameSubscriber.lines((data, offset, length) -> offer(collector, data, offset, length));
+		}
+		return FrameSubscriber.whole(
+			(data, offset, length) -> {
+				if (isBlank(data, offset, length)) {
+					logSink.accept("<< HTTP body" + formatMethodSuffix(method) + ": (empty)");
+					collector.first = mapper.createObjectNode();
+					return true;
+				}
+				JsonNode node = parse(data, offset, length);
+				wireSink.accept(WireEvent.message(WireEvent.Direction.IN, node, length));
+				if (collector.isBatch()) {
+					collector.offer(node);
 				}
+				else {
+					collector.first = node;
+				}
+				return true;
 			}
 		);
 	}
 
-	private JsonNode parseNdjson(InputStream input, Integer id) throws Exception {
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				String payload = line.trim();
-				if (payload.isEmpty()) {
-					continue;
-				}
-				logSink.accept("<< " + payload);
-				JsonNode node = mapper.readTree(payload);
-				if (id == null) {
-					return node;
-				}
-				if (node.has("id") && node.get("id").asInt() == id) {
-					return node;
-				}
+	private boolean offer(ResponseCollector collector, byte[] data, int offset, int length) {
+		JsonNode node = parse(data, offset, length);
+		wireSink.accept(WireEvent.message(WireEvent.Direction.IN, node, length));
+		if (dispatchNotification(node)) {
+			return false;
+		}
+		if (node.has("method")) {
+			logSink.accept("!! unhandled server request " + node.get("id") + formatMethodSuffix(node.get("method").asText()));
+			return false;
+		}
+		return collector.offer(node);
+	}
+
+	private JsonNode parse(byte[] data, int offset, int length) {
+		try {
+			return mapper.readTree(data, offset, length);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Failed to parse response", e);
+		}
+	}
+
+	private void onResponse(HttpResponse.ResponseInfo info, String method) {
+		wireSink.accept(WireEvent.response(method, endpoint, info));
+		captureSessionId(info.headers());
+		if (info.statusCode() == 401) {
+			logUnauthorized(info.headers());
+			handleUnauthorized(info.headers());
+		}
+	}
+
+	private static boolean isStreaming(String contentType) {
+		return contentType.contains("ndjson") || contentType.contains("jsonlines") || contentType.contains("text/event-stream");
+	}
+
+	private static boolean isBlank(byte[] data, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if ((data[i] & 0xFF) > ' ') {
+				return false;
 			}
 		}
-		throw new IllegalStateException("Stream ended without response");
+		return true;
 	}
 
-	private JsonNode parseSse(InputStream input, Integer id) throws Exception {
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
-			String line;
-			StringBuilder dataBuffer = new StringBuilder();
-			while ((line = reader.readLine()) != null) {
-				String trimmed = line.trim();
-				if (trimmed.isEmpty()) {
-					if (dataBuffer.length() == 0) {
-						continue;
-					}
-					String payload = dataBuffer.toString().trim();
-					dataBuffer.setLength(0);
-					if (payload.isEmpty()) {
-						continue;
-					}
-					logSink.accept("<< " + payload);
-					JsonNode node = mapper.readTree(payload);
-					if (id == null) {
-						return node;
-					}
-					if (node.has("id") && node.get("id").asInt() == id) {
-						return node;
-					}
-					continue;
-				}
-				if (trimmed.startsWith("data:")) {
-					String data = trimmed.substring(5).trim();
-					if (!data.isEmpty()) {
-						dataBuffer.append(data).append("\n");
-					}
-				}
+	private CompletableFuture<List<JsonNode>> sendBatch(List<BatchCall> calls) {
+		ArrayNode payload = mapper.createArrayNode();
+		List<Long> ids = new ArrayList<>(calls.size());
+		for (BatchCall call : calls) {
+			long id = nextId.getAndIncrement();
+			ObjectNode message = payload.addObject();
+			message.put("jsonrpc", "2.0");
+			message.put("id", id);
+			message.put("method", call.method);
+			if (call.params != null) {
+				message.set("params", call.params);
+			}
+			ids.add(id);
+		}
+		ResponseCollector collector = new ResponseCollector(ids, true);
+		return readResponse(payload, collector, "batch", null)
+			.thenApply(ignored -> BatchCall.ordered(mapper, ids, collector.responses));
+	}
+
+	private boolean dispatchNotification(JsonNode message) {
+		if (!message.has("method") || message.has("id")) {
+			return false;
+		}
+		Consumer<JsonNode> handler = notificationHandler;
+		if (handler != null) {
+			try {
+				handler.accept(message);
+			}
+			catch (RuntimeException e) {
+				logSink.accept("!! notification handler failed: " + e.getMessage());
 			}
 		}
-		throw new IllegalStateException("Stream ended without response");
+		return true;
+	}
+
+	private static int statusOf(Throwable error) {
+		for (Throwable current = error; current != null && current.getCause() != current; current = current.getCause()) {
+			if (current instanceof HttpStatusException status) {
+				return status.status;
+			}
+		}
+		return 0;
+	}
+
+	private static boolean isFinal(int statusCode) {
+		// An expired session or lost authorization will not heal by retrying; overload and slow responses may.
+		return statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429;
+	}
+
+	private static boolean rejectsBatch(int statusCode) {
+		return statusCode >= 400 && statusCode < 500 && statusCode != 401 && statusCode != 403 && statusCode != 404 && statusCode != 429;
 	}
 
-	private void handleUnauthorized(HttpResponse<?> response) {
+	private void handleUnauthorized(HttpHeaders responseHeaders) {
 		if (unauthorizedHandler == null) {
 			return;
 		}
-		String header = response.headers().firstValue("WWW-Authenticate").orElse(null);
+		String header = responseHeaders.firstValue("WWW-Authenticate").orElse(null);
 		unauthorizedHandler.accept(header);
 	}
 
-	private void logUnauthorized(HttpResponse<?> response) {
+	private void logUnauthorized(HttpHeaders responseHeaders) {
 		StringBuilder builder = new StringBuilder();
 		builder.append("<< HTTP 401 headers:\n");
-		response.headers().map().forEach(
+		responseHeaders.map().forEach(
 			(key, values) -> {
 				builder.append(key).append("=");
 				if (values != null && !values.isEmpty()) {
@@ -315,92 +692,72 @@ public class StreamableHttpMcpClient implements McpClient {
 		}
 	}
 
-	private void logRequestHeaders(String method, URI url, Map<String, String> activeHeaders) {
-		if (activeHeaders == null || activeHeaders.isEmpty()) {
+	private void captureSessionId(HttpHeaders responseHeaders) {
+		if (sessionIdSink == null || responseHeaders == null) {
 			return;
 		}
-		StringBuilder builder = new StringBuilder();
-		builder.append(">> HTTP headers");
-		if (method != null && !method.isBlank()) {
-			builder.append(" (").append(method).append(")");
-		}
-		if (url != null) {
-			builder.append(" ").append(url);
-		}
-		builder.append("\n");
-		activeHeaders.forEach(
-			(key, value) -> {
-				String output = value;
-				if ("authorization".equalsIgnoreCase(key) && value != null && !value.isBlank()) {
-					int space = value.indexOf(' ');
-					if (space > 0) {
-						String scheme = value.substring(0, space).trim();
-						output = scheme.isBlank() ? "****" : scheme + " ****";
-					}
-					else {
-						output = "****";
-					}
-				}
-				builder.append(key).append("=").append(output == null ? "" : output).append("\n");
-			}
-		);
-		logSink.accept(builder.toString().trim());
+		responseHeaders.firstValue("mcp-session-id").ifPresent(sessionIdSink);
 	}
 
-	private void logRequestLine(String method, URI url) {
-		StringBuilder builder = new StringBuilder();
-		builder.append(">> HTTP request");
-		if (method != null && !method.isBlank()) {
-			builder.append(" (").append(method).append(")");
-		}
-		if (url != null) {
-			builder.append(" ").append(url);
+	private static String formatMethodSuffix(String method) {
+		if (method == null || method.isBlank()) {
+			return "";
 		}
-		logSink.accept(builder.toString());
+		return " (" + method + ")";
 	}
 
-	private void captureSessionId(HttpResponse<?> response) {
-		if (sessionIdSink == null || response == null) {
-			return;
-		}
-		response.headers().firstValue("mcp-session-id").ifPresent(sessionIdSink);
-	}
+	private static class ResponseCollector {
+		private final Set<Long> ids;
+		private final boolean batch;
+		private final Map<Long, JsonNode> responses = new HashMap<>();
+		private JsonNode first;
+		private volatile String lastEventId;
 
-	private void logResponseHeaders(String method, HttpResponse<?> response) {
-		if (response == null) {
-			return;
+		private ResponseCollector(List<Long> ids, boolean batch) {
+			this.ids = ids == null ? null : new HashSet<>(ids);
+			this.batch = batch;
 		}
-		StringBuilder builder = new StringBuilder();
-		builder.append("<< HTTP response");
-		if (method != null && !method.isBlank()) {
-			builder.append(" (").append(method).append(")");
+
+		private boolean isBatch() {
+			return batch;
 		}
-		builder.append(" ").append(response.statusCode());
-		try {
-			URI uri = response.request() != null ? response.request().uri() : null;
-			if (uri != null) {
-				builder.append(" ").append(uri);
+
+		private boolean offer(JsonNode node) {
+			if (node.isArray()) {
+				for (JsonNode element : node) {
+					offerElement(element);
+				}
+				return isComplete();
 			}
+			if (batch && responses.isEmpty() && BatchCall.isRejection(node)) {
+				throw new BatchRejectedException("Batch rejected: " + node.get("error"));
+			}
+			return offerElement(node);
 		}
-		catch (Exception ignored) {
-		}
-		builder.append("\n");
-		response.headers().map().forEach(
-			(key, values) -> {
-				builder.append(key).append("=");
-				if (values != null && !values.isEmpty()) {
-					builder.append(String.join(";", values));
+
+		private boolean offerElement(JsonNode node) {
+			if (ids == null) {
+				if (first == null) {
+					first = node;
 				}
-				builder.append("\n");
+				return true;
 			}
-		);
-		logSink.accept(builder.toString().trim());
-	}
+			if (!node.has("id") || node.get("id").isNull()) {
+				return false;
+			}
+			long id = node.get("id").asLong();
+			if (!ids.contains(id)) {
+				return false;
+			}
+			if (first == null) {
+				first = node;
+			}
+			responses.put(id, node);
+			return isComplete();
+		}
 
-	private static String formatMethodSuffix(String method) {
-		if (method == null || method.isBlank()) {
-			return "";
+		private boolean isComplete() {
+			return ids == null ? first != null : responses.size() >= ids.size();
 		}
-		return " (" + method + ")";
 	}
 }
@@ -0,0 +1,316 @@
+package app;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class SupervisedMcpClient implements McpClient {
+	private static final Duration EXIT_GRACE = Duration.ofSeconds(5);
+	private final Supplier<PooledMcpClient.Member> spawner;
+	private final int maxRestarts;
+	private final Duration window;
+	private final Backoff backoff;
+	private final SessionThreads threads;
+	private final Consumer<String> logSink;
+	private final ArrayDeque<Long> restartTimes = new ArrayDeque<>();
+	private final CompletableFuture<Void> gaveUp = new CompletableFuture<>();
+	private final AtomicLong crashes = new AtomicLong();
+	private final AtomicLong restarts = new AtomicLong();
+	private final AtomicLong replayed = new AtomicLong();
+	private volatile CompletableFuture<Instance> ready;
+	private volatile Instance current;
+	private volatile JsonNode configuration;
+	private volatile Consumer<JsonNode> notificationHandler;
+	private volatile boolean closed;
+
+	public SupervisedMcpClient(
+		PooledMcpClient.Member initial,
+		JsonNode configuration,
+		Supplier<PooledMcpClient.Member> spawner,
+		int maxRestarts,
+		Duration window,
+		Backoff backoff,
+		SessionThreads threads,
+		Consumer<String> logSink) {
+		this.configuration = configuration;
+		this.spawner = spawner;
+		this.maxRestarts = maxRestarts;
+		this.window = window;
+		this.backoff = backoff;
+		this.threads = threads;
+		this.logSink = logSink;
+		Instance instance = new Instance(initial);
+		this.current = instance;
+		this.ready = CompletableFuture.completedFuture(instance);
+		watch(instance);
+	}
+
+	public boolean isAvailable() {
+		return !closed && !gaveUp.isDone();
+	}
+
+	public CompletableFuture<Void> gaveUp() {
+		return gaveUp;
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> initialize(JsonNode configuration) {
+		this.configuration = configuration;
+		return ready.thenCompose(instance -> instance.member.client.initialize(configuration));
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> listTools() {
+		return call("tools/list", McpClient::listTools);
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> listResources() {
+		return call("resources/list", McpClient::listResources);
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> listPrompts() {
+		return call("prompts/list", McpClient::listPrompts);
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> callTool(String name, JsonNode arguments, JsonNode meta) {
+		return call("tools/call", client -> client.callTool(name, arguments, meta));
+	}
+
+	@Override
+	public CompletableFuture<SpooledResult> callToolStreaming(String name, JsonNode arguments, JsonNode meta) {
+		return call("tools/call", client -> client.callToolStreaming(name, arguments, meta));
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> readResource(String uri) {
+		return call("resources/read", client -> client.readResource(uri));
+	}
+
+	@Override
+	public CompletableFuture<JsonNode> getPrompt(String name, JsonNode arguments) {
+		return call("prompts/get", client -> client.getPrompt(name, arguments));
+	}
+
+	@Override
+	public CompletableFuture<List<JsonNode>> batch(List<BatchCall> calls) {
+		boolean idempotent = calls.stream().allMatch(call -> McpClient.isIdempotent(call.method));
+		return call(idempotent, client -> client.batch(calls));
+	}
+
+	@Override
+	public void onNotification(Consumer<JsonNode> handler) {
+		this.notificationHandler = handler;
+		current.member.client.onNotification(handler);
+	}
+
+	@Override
+	public Map<String, Long> metrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>(current.member.client.metrics());
+		metrics.put("supervisorCrashes", crashes.get());
+		metrics.put("supervisorRestarts", restarts.get());
+		metrics.put("supervisorReplayed", replayed.get());
+		return metrics;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		CompletableFuture<Instance> pending = ready;
+		ready = CompletableFuture.failedFuture(new IllegalStateException("Client closed"));
+		pending.completeExceptionally(new IllegalStateException("Client closed"));
+		Instance instance = current;
+		instance.member.client.close();
+		instance.member.process.destroy();
+	}
+
+	private <T> CompletableFuture<T> call(String method, Function<McpClient, CompletableFuture<T>> call) {
+		return call(McpClient.isIdempotent(method), call);
+	}
+
+	private <T> CompletableFuture<T> call(boolean replayable, Function<McpClient, CompletableFuture<T>> call) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		dispatch(replayable, call, result);
+		return result;
+	}
+
+	private <T> void dispatch(boolean replayable, Function<McpClient, CompletableFuture<T>> call, CompletableFuture<T> result) {
+		ready.whenComplete(
+			(instance, unavailable) -> {
+				if (unavailable != null) {
+					result.completeExceptionally(unwrap(unavailable));
+					return;
+				}
+				CompletableFuture<T> sent;
+				try {
+					sent = call.apply(instance.member.client);
+				}
+				catch (RuntimeException e) {
+					sent = CompletableFuture.failedFuture(e);
+				}
+				sent.whenComplete(
+					(value, error) -> {
+						if (error == null) {
+							result.complete(value);
+							return;
+						}
+						Throwable cause = unwrap(error);
+						if (!(cause instanceof IOException) || !replayable) {
+							result.completeExceptionally(cause);
+							return;
+						}
+						// The connection dropped; wait until the exit is handled so the replay lands on the restart.
+						DeadlineTimer.Timeout grace = DeadlineTimer.shared().schedule(EXIT_GRACE, () -> result.completeExceptionally(cause));
+						instance.exitHandled.thenRun(
+							() -> {
+								grace.cancel();
+								if (result.isDone() || !isAvailable()) {
+									result.completeExceptionally(cause);
+									return;
+								}
+								replayed.incrementAndGet();
+								dispatch(false, call, result);
+							}
+						);
+					}
+				);
+			}
+		);
+	}
+
+	private void watch(Instance instance) {
+		instance.member.process.onExit()
+			.whenComplete((process, error) -> crashed(instance));
+	}
+
+	private void crashed(Instance instance) {
+		if (closed || instance != current) {
+			instance.exitHandled.complete(null);
+			return;
+		}
+		crashes.incrementAndGet();
+		instance.member.client.close();
+		int exitCode = instance.member.process.exitValue();
+		if (!takeRestart()) {
+			logSink.accept("!! server exited with code " + exitCode + ", " + maxRestarts + " restarts within " + window.toSeconds() + " s used up; giving up");
+			ready = CompletableFuture.failedFuture(new IllegalStateException("Server crashed and was not restarted"));
+			gaveUp.complete(null);
+			instance.exitHandled.complete(null);
+			return;
+		}
+		CompletableFuture<Instance> restarting = new CompletableFuture<>();
+		ready = restarting;
+		Duration delay = backoff.next();
+		logSink.accept("!! server exited with code " + exitCode + ", restarting in " + delay.toMillis() + " ms");
+		instance.exitHandled.complete(null);
+		DeadlineTimer.shared().schedule(delay, () -> restart(restarting));
+	}
+
+	private void restart(CompletableFuture<Instance> restarting) {
+		CompletableFuture<PooledMcpClient.Member> spawning = new CompletableFuture<>();
+		threads.start(
+			"mcp-restart",
+			() -> {
+				try {
+					spawning.complete(spawner.get());
+				}
+				catch (RuntimeException e) {
+					spawning.completeExceptionally(e);
+				}
+			}
+		);
+		spawning
+			.thenCompose(
+				member -> {
+					Instance instance = new Instance(member);
+					Consumer<JsonNode> handler = notificationHandler;
+					if (handler != null) {
+						member.client.onNotification(handler);
+					}
+					return member.client.initialize(configuration)
+						.handle(
+							(result, error) -> {
+								if (error != null) {
+									member.client.close();
+									member.process.destroy();
+									throw new CompletionException(unwrap(error));
+								}
+								return instance;
+							}
+						);
+				}
+			)
+			.whenComplete(
+				(instance, error) -> {
+					if (closed) {
+						if (instance != null) {
+							instance.member.client.close();
+							instance.member.process.destroy();
+						}
+						return;
+					}
+					if (error != null) {
+						logSink.accept("!! restart failed: " + unwrap(error).getMessage());
+						if (takeRestart()) {
+							DeadlineTimer.shared().schedule(backoff.next(), () -> restart(restarting));
+							return;
+						}
+						ready = CompletableFuture.failedFuture(new IllegalStateException("Server crashed and could not be restarted"));
+						restarting.completeExceptionally(unwrap(error));
+						gaveUp.complete(null);
+						return;
+					}
+					restarts.incrementAndGet();
+					current = instance;
+					ready = CompletableFuture.completedFuture(instance);
+					watch(instance);
+					logSink.accept("server restarted, pid " + instance.member.process.pid());
+					restarting.complete(instance);
+				}
+			);
+	}
+
+	private synchronized boolean takeRestart() {
+		long now = System.nanoTime();
+		while (!restartTimes.isEmpty() && now - restartTimes.peekFirst() > window.toNanos()) {
+			restartTimes.pollFirst();
+		}
+		if (restartTimes.isEmpty()) {
+			backoff.reset();
+		}
+		if (restartTimes.size() >= maxRestarts) {
+			return false;
+		}
+		restartTimes.addLast(now);
+		return true;
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		Throwable current = error;
+		while ((current instanceof CompletionException || current instanceof ExecutionException) && current.getCause() != null) {
+			current = current.getCause();
+		}
+		return current;
+	}
+
+	private static final class Instance {
+		private final PooledMcpClient.Member member;
+		private final CompletableFuture<Void> exitHandled = new CompletableFuture<>();
+
+		private Instance(PooledMcpClient.Member member) {
+			this.member = member;
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package app;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+public final class WireEvent {
+	public enum Direction {
+		OUT(">>"),
+		IN("<<");
+
+		private final String marker;
+
+		Direction(String marker) {
+			this.marker = marker;
+		}
+	}
+
+	public enum Kind {
+		MESSAGE,
+		HEADERS
+	}
+
+	public enum Verbosity {
+		SUMMARY,
+		HEADERS,
+		PAYLOAD;
+
+		public static Verbosity parse(String value) {
+			if (value == null || value.isBlank()) {
+				return PAYLOAD;
+			}
+			return Verbosity.valueOf(value.trim().toUpperCase());
+		}
+	}
+
+	public final Instant time;
+	public final Direction direction;
+	public final Kind kind;
+	public final String channel;
+	public final String label;
+	public final String method;
+	public final JsonNode id;
+	public final long size;
+	public final int status;
+	public final URI uri;
+	public final Map<String, ?> headers;
+	public final JsonNode payload;
+	public final String text;
+
+	private WireEvent(
+		Instant time,
+		Direction direction,
+		Kind kind,
+		String channel,
+		String label,
+		String method,
+		JsonNode id,
+		long size,
+		int status,
+		URI uri,
+		Map<String, ?> headers,
+		JsonNode payload,
+		String text) {
+		this.time = time;
+		this.direction = direction;
+		this.kind = kind;
+		this.channel = channel;
+		this.label = label;
+		this.method = method;
+		this.id = id;
+		this.size = size;
+		this.status = status;
+		this.uri = uri;
+		this.headers = headers;
+		this.payload = payload;
+		this.text = text;
+	}
+
+	public static WireEvent message(Direction direction, JsonNode payload, long size) {
+		return new WireEvent(Instant.now(), direction, Kind.MESSAGE, null, null, methodOf(payload), idOf(payload), size, 0, null, null, payload, null);
+	}
+
+	public static WireEvent rpc(Direction direction, String method, JsonNode payload) {
+		return new WireEvent(Instant.now(), direction, Kind.MESSAGE, "rpc", null, method, null, -1, 0, null, null, payload, null);
+	}
+
+	public static WireEvent body(Direction direction, String method, String text) {
+		long size = text == null ? -1 : text.length();
+		return new WireEvent(Instant.now(), direction, Kind.MESSAGE, null, "HTTP body", method, null, size, 0, null, null, null, text);
+	}
+
+	public static WireEvent request(String method, URI uri, Map<String, String> headers) {
+		return new WireEvent(Instant.now(), Direction.OUT, Kind.HEADERS, null, "HTTP headers", method, null, -1, 0, uri, headers, null, null);
+	}
+
+	public static WireEvent response(String method, URI uri, HttpResponse.ResponseInfo response) {
+		return new WireEvent(
+			Instant.now(),
+			Direction.IN,
+			Kind.HEADERS,
+			null,
+			"HTTP response",
+			method,
+			null,
+			-1,
+			response.statusCode(),
+			uri,
+			response.headers().map(),
+			null,
+			null);
+	}
+
+	public boolean isVisibleAt(Verbosity verbosity) {
+		return kind == Kind.MESSAGE || verbosity.compareTo(Verbosity.HEADERS) >= 0;
+	}
+
+	public String render(Verbosity verbosity) {
+		StringBuilder builder = new StringBuilder(64);
+		builder.append(time).append(' ');
+		if (channel != null) {
+			builder.append(channel).append(' ');
+		}
+		builder.append(direction.marker).append(' ');
+		if (kind == Kind.HEADERS) {
+			appendHeaders(builder);
+			return builder.toString();
+		}
+		if (label != null) {
+			builder.append(label).append(formatMethodSuffix(method)).append(' ');
+		}
+		if (verbosity == Verbosity.PAYLOAD && payload != null) {
+			builder.append(payload);
+		}
+		else if (verbosity == Verbosity.PAYLOAD && text != null) {
+			builder.append(text);
+		}
+		else {
+			appendSummary(builder);
+		}
+		return builder.toString();
+	}
+
+	private void appendSummary(StringBuilder builder) {
+		if (label == null && method != null) {
+			builder.append(method).append(' ');
+		}
+		if (id != null && !id.isNull()) {
+			builder.append("id=").append(id.asText()).append(' ');
+		}
+		builder.append(size >= 0 ? "(" + size + " bytes)" : "(payload omitted)");
+	}
+
+	private void appendHeaders(StringBuilder builder) {
+		builder.append(label).append(formatMethodSuffix(method));
+		if (status > 0) {
+			builder.append(' ').append(status);
+		}
+		if (uri != null) {
+			builder.append(' ').append(uri);
+		}
+		if (headers == null) {
+			return;
+		}
+		headers.forEach(
+			(key, value) -> {
+				builder.append('\n').append(key).append('=');
+				if (value instanceof List<?> values) {
+					values.forEach(
+						entry -> builder.append(entry).append(';')
+					);
+					if (!values.isEmpty()) {
+						builder.setLength(builder.length() - 1);
+					}
+				}
+				else {
+					builder.append(mask(key, value == null ? "" : value.toString()));
+				}
+			}
+		);
+	}
+
+	private static String mask(String key, String value) {
+		if (!"authorization".equalsIgnoreCase(key) || value.isBlank()) {
+			return value;
+		}
+		int space = value.indexOf(' ');
+		if (space <= 0) {
+			return "****";
+		}
+		String scheme = value.substring(0, space).trim();
+		return scheme.isBlank() ? "****" : scheme + " ****";
+	}
+
+	private static String methodOf(JsonNode payload) {
+		if (payload == null || !payload.isObject() || !payload.has("method")) {
+			return null;
+		}
+		return payload.get("method").asText(null);
+	}
+
+	private static JsonNode idOf(JsonNode payload) {
+		if (payload == null || !payload.isObject()) {
+			return null;
+		}
+		return payload.get("id");
+	}
+
+	private static String formatMethodSuffix(String method) {
+		if (method == null || method.isBlank()) {
+			return "";
+		}
+		return " (" + method + ")";
+	}
+}
@@ -0,0 +1,115 @@
+package app;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class PendingRequestsTest {
+	private static final int OPERATIONS = 200_000;
+
+	@Test
+	void randomOperationsMatchHashMap() {
+		Random random = new Random(42);
+		PendingRequests pending = new PendingRequests(null);
+		Map<Long, PendingRequests.Entry> expected = new HashMap<>();
+		List<Long> known = new ArrayList<>();
+		long nextId = 1;
+		for (int i = 0; i < OPERATIONS; i++) {
+			int operation = random.nextInt(100);
+			if (operation < 45) {
+				long id = nextId(random, nextId++);
+				if (expected.containsKey(id)) {
+					continue;
+				}
+				pending.register(id, "tools/call", PendingRequests.Mode.RAW, null);
+				PendingRequests.Entry entry = pending.get(id);
+				assertEquals(id, entry.id);
+				expected.put(id, entry);
+				known.add(id);
+			}
+			else if (operation < 70) {
+				long id = pick(random, known, nextId);
+				assertSame(expected.get(id), pending.get(id), "get " + id);
+			}
+			else if (operation < 90) {
+				long id = pick(random, known, nextId);
+				assertSame(expected.remove(id), pending.remove(id), "remove " + id);
+			}
+			else if (operation < 99) {
+				long id = pick(random, known, nextId);
+				PendingRequests.Entry entry = expected.get(id);
+				if (entry != null) {
+					assertTrue(pending.remove(entry), "remove entry " + id);
+					expected.remove(id);
+					assertTrue(!pending.remove(entry), "remove entry twice " + id);
+				}
+			}
+			else {
+				int divisor = 2 + random.nextInt(5);
+				List<PendingRequests.Entry> removed = pending.removeIf(entry -> entry.id % divisor == 0);
+				List<PendingRequests.Entry> expectedRemoved = new ArrayList<>();
+				expected.values().removeIf(entry -> entry.id % divisor == 0 && expectedRemoved.add(entry));
+				assertEquals(ids(expectedRemoved), ids(removed), "removeIf");
+			}
+			assertEquals(expected.isEmpty(), pending.isEmpty(), "isEmpty after operation " + i);
+		}
+		assertEquals(ids(new ArrayList<>(expected.values())), ids(pending.drain()), "drain");
+		assertTrue(pending.isEmpty());
+		for (long id : known) {
+			assertNull(pending.get(id));
+		}
+	}
+
+	@Test
+	void collidingIdsSurviveRemovalInAnyOrder() {
+		Random random = new Random(7);
+		PendingRequests pending = new PendingRequests(null);
+		List<Long> ids = new ArrayList<>();
+		for (long i = 0; i < 4096; i++) {
+			long id = i << 32;
+			ids.add(id);
+			pending.register(id, "ping", PendingRequests.Mode.RESULT, null);
+		}
+		Collections.shuffle(ids, random);
+		for (int i = 0; i < ids.size(); i++) {
+			PendingRequests.Entry entry = pending.remove(ids.get(i).longValue());
+			assertEquals(ids.get(i).longValue(), entry.id);
+			for (int j = i + 1; j < ids.size(); j += 97) {
+				assertEquals(ids.get(j).longValue(), pending.get(ids.get(j)).id);
+			}
+		}
+		assertTrue(pending.isEmpty());
+	}
+
+	private static long nextId(Random random, long sequential) {
+		return switch (random.nextInt(4)) {
+			case 0 -> random.nextLong();
+			case 1 -> (long) random.nextInt(1 << 12) << 32;
+			default -> sequential;
+		};
+	}
+
+	private static long pick(Random random, List<Long> known, long nextId) {
+		if (known.isEmpty() || random.nextInt(10) == 0) {
+			return random.nextInt((int) Math.min(Integer.MAX_VALUE, nextId + 1));
+		}
+		return known.get(random.nextInt(known.size()));
+	}
+
+	private static List<Long> ids(List<PendingRequests.Entry> entries) {
+		List<Long> ids = new ArrayList<>();
+		for (PendingRequests.Entry entry : entries) {
+			ids.add(entry.id);
+		}
+		ids.sort(Comparator.naturalOrder());
+		return ids;
+	}
+}
@@ -0,0 +1,86 @@
+package app;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SseDecoderTest {
+	private static final String STREAM = "\uFEFF"
+		+ "retry: 1500\n"
+		+ ": keep-alive\n"
+		+ "event: endpoint\n"
+		+ "data: /messages?session=abc\n"
+		+ "\n"
+		+ "id: 1\r\n"
+		+ "data: {\"jsonrpc\":\"2.0\",\r\n"
+		+ "data: \"id\":1,\"result\":{}}\r\n"
+		+ "\r\n"
+		+ "event: ping\r"
+		+ "data\r"
+		+ "\r"
+		+ "id: 2\n"
+		+ "data:no-space\n"
+		+ "data:  two spaces\n"
+		+ "\n"
+		+ "event: ignored\n"
+		+ "\n"
+		+ "data: {\"text\":\"grüße ✓\"}\n"
+		+ "\n"
+		+ "data: not terminated\n";
+
+	private static final List<String> EXPECTED = List.of(
+		"endpoint|null|1500|/messages?session=abc",
+		"message|1|1500|{\"jsonrpc\":\"2.0\",\n\"id\":1,\"result\":{}}",
+		"ping|1|1500|",
+		"message|2|1500|no-space\n two spaces",
+		"message|2|1500|{\"text\":\"grüße ✓\"}"
+	);
+
+	@Test
+	void decodesWholeStream() throws Exception {
+		assertEquals(EXPECTED, decode(STREAM.getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE));
+	}
+
+	@Test
+	void chunkBoundariesDoNotChangeEvents() throws Exception {
+		byte[] stream = STREAM.getBytes(StandardCharsets.UTF_8);
+		for (int chunkSize : new int[] { 1, 2, 3, 7, 1000 }) {
+			assertEquals(EXPECTED, decode(stream, chunkSize), "chunk size " + chunkSize);
+		}
+	}
+
+	@Test
+	void stopsWhenHandlerAsks() throws Exception {
+		byte[] stream = STREAM.getBytes(StandardCharsets.UTF_8);
+		SseDecoder decoder = new SseDecoder();
+		List<String> events = new ArrayList<>();
+		boolean stopped = false;
+		for (int offset = 0; offset < stream.length && !stopped; offset += 3) {
+			stopped = decoder.feed(stream, offset, Math.min(3, stream.length - offset), event -> {
+				events.add(event.type());
+				return events.size() == 2;
+			});
+		}
+		assertEquals(true, stopped);
+		assertEquals(List.of("endpoint", "message"), events);
+	}
+
+	private static List<String> decode(byte[] stream, int chunkSize) throws Exception {
+		SseDecoder decoder = new SseDecoder();
+		List<String> events = new ArrayList<>();
+		ByteArrayOutputStream copy = new ByteArrayOutputStream();
+		for (int offset = 0; offset < stream.length; offset += chunkSize) {
+			int length = Math.min(chunkSize, stream.length - offset);
+			copy.write(stream, offset, length);
+			byte[] chunk = copy.toByteArray();
+			copy.reset();
+			decoder.feed(chunk, 0, chunk.length, event -> {
+				events.add(event.type() + "|" + event.id() + "|" + event.retry() + "|" + event.dataString());
+				return false;
+			});
+		}
+		return events;
+	}
+}
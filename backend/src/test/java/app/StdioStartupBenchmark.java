@@ -0,0 +1,120 @@
+package app;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Starts N dummy stdio servers the way ServerSessions does and reports startup time, threads and memory.
+// Run one mode per JVM for comparable numbers:
+//   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+//   java -cp target/classes:target/test-classes:$(cat target/cp.txt) app.StdioStartupBenchmark 300 virtual
+public class StdioStartupBenchmark {
+	private static final List<String> DUMMY_SERVER = List.of(
+		"sed",
+		"-un",
+		"/\"id\"/s/.*\"id\":\\([0-9]*\\).*/{\"jsonrpc\":\"2.0\",\"id\":\\1,\"result\":{}}/p"
+	);
+
+	public static void main(String[] args) throws Exception {
+		int servers = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		String mode = args.length > 1 ? args[1] : "platform";
+		if (!mode.equals("platform") && !mode.equals("virtual")) {
+			throw new IllegalArgumentException("Mode must be platform or virtual: " + mode);
+		}
+		run(servers, new SessionThreads(mode.equals("virtual")));
+	}
+
+	private static void run(int servers, SessionThreads threads) throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+		int threadsBefore = threadBean.getThreadCount();
+		long rssBefore = residentKib();
+		List<Process> processes = new ArrayList<>(servers);
+		List<StdioMcpClient> clients = new ArrayList<>(servers);
+		List<CompletableFuture<?>> initialized = new ArrayList<>(servers);
+		long started = System.nanoTime();
+		try {
+			for (int i = 0; i < servers; i++) {
+				Process process = new ProcessBuilder(DUMMY_SERVER).start();
+				processes.add(process);
+				StdioMcpClient client = new StdioMcpClient(
+					mapper,
+					process.getInputStream(),
+					process.getOutputStream(),
+					message -> {},
+					event -> {},
+					JsonRpcConnection.Framing.NDJSON,
+					threads,
+					RequestTimeouts.fixed(),
+					null);
+				clients.add(client);
+				threads.start("mcp-stderr-reader", () -> drain(process.getErrorStream()));
+				initialized.add(client.initialize(null));
+			}
+			try {
+				CompletableFuture.allOf(initialized.toArray(CompletableFuture<?>[]::new)).get(2, TimeUnit.MINUTES);
+			}
+			catch (ExecutionException | TimeoutException e) {
+				// In virtual mode this is what pinned carriers look like once the fleet outgrows the carrier cap.
+				long done = initialized.stream().filter(future -> future.isDone() && !future.isCompletedExceptionally()).count();
+				System.out.printf(
+					"%d servers, %s threads: startup stalled, %d initialized (%s)%n",
+					servers,
+					threads.isVirtual() ? "virtual" : "platform",
+					done,
+					e.getCause() != null ? e.getCause().getMessage() : e.toString());
+				return;
+			}
+			long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			System.gc();
+			Thread.sleep(500);
+			System.out.printf(
+				"%d servers, %s threads: startup %d ms, platform threads +%d, heap %d KiB, non-heap %d KiB, RSS +%d KiB%n",
+				servers,
+				threads.isVirtual() ? "virtual" : "platform",
+				startupMillis,
+				threadBean.getThreadCount() - threadsBefore,
+				memoryBean.getHeapMemoryUsage().getUsed() / 1024,
+				memoryBean.getNonHeapMemoryUsage().getUsed() / 1024,
+				residentKib() - rssBefore);
+		}
+		finally {
+			clients.forEach(StdioMcpClient::close);
+			processes.forEach(Process::destroy);
+		}
+	}
+
+	private static void drain(InputStream stderr) {
+		byte[] buffer = new byte[1024];
+		try (stderr) {
+			while (stderr.read(buffer) >= 0) {
+			}
+		}
+		catch (IOException ignored) {
+		}
+	}
+
+	private static long residentKib() throws IOException {
+		Path status = Path.of("/proc/self/status");
+		if (!Files.exists(status)) {
+			return 0;
+		}
+		for (String line : Files.readAllLines(status)) {
+			if (line.startsWith("VmRSS:")) {
+				return Long.parseLong(line.replaceAll("[^0-9]", ""));
+			}
+		}
+		return 0;
+	}
+}
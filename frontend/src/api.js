@@ -31,8 +31,8 @@ export function stopServer(serverName) {
 export function getStatus(serverName) {
 	return request(`/servers/${serverName}/status`);
 }
-export function getFacets(serverName) {
-	return request(`/servers/${serverName}/facets`);
+export function getFacets(serverName, { refresh = true } = {}) {
+	return request(`/servers/${serverName}/facets${refresh ? "" : "?refresh=false"}`);
 }
 export function invokeTool(serverName, payload) {
 	return request(`/servers/${serverName}/invoke`, { method: "POST", body: JSON.stringify(payload) });